@@ -0,0 +1,223 @@
+package analysis.experiments;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A small benchmark harness for the experiments, in the spirit of JMH but with no
+ * dependencies beyond the JDK.
+ *
+ * - Each iteration calls the workload repeatedly until at least 'minIterationNanos'
+ *   have passed, so even very fast operations are measured as a non-zero time per
+ *   call instead of rounding to 0 like a single System.nanoTime pair would.
+ * - Warmup iterations run first and are discarded, giving the JIT time to compile
+ *   the workload.
+ * - Every measured iteration is kept, so the result can report the median and tail
+ *   percentiles as well as the mean.
+ * - Bytes allocated per call and garbage collections during measurement are
+ *   recorded when the JVM exposes them (HotSpot does; other JVMs report -1).
+ * - 'fork' runs a main class in a fresh JVM, so the profile built up by one
+ *   benchmark cannot change how the JIT compiles the next.
+ */
+public class Benchmark {
+    // Written to so the JIT cannot drop the workload's result.
+    private static volatile long sink = 0;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long minIterationNanos;
+
+    /**
+     * A piece of work to time. The returned value is consumed by the harness so the
+     * work cannot be optimized away; return something that depends on the result.
+     */
+    public interface Workload {
+        long run();
+    }
+
+    public Benchmark(int warmupIterations, int measurementIterations, long minIterationNanos) {
+        if (warmupIterations < 0 || measurementIterations < 1 || minIterationNanos < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.minIterationNanos = minIterationNanos;
+    }
+
+    /**
+     * Times 'workload' and returns the nanoseconds per call of every measured iteration
+     * (each the average over the calls made in that iteration).
+     */
+    public Result measure(Workload workload) {
+        for (int i = 0; i < this.warmupIterations; i++) {
+            this.iteration(workload);
+        }
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long allocated = allocatedBytes();
+        long calls = 0;
+        double[] nanosPerCall = new double[this.measurementIterations];
+        for (int i = 0; i < this.measurementIterations; i++) {
+            long start = System.nanoTime();
+            long iterationCalls = this.iteration(workload);
+            nanosPerCall[i] = (double) (System.nanoTime() - start) / iterationCalls;
+            calls += iterationCalls;
+        }
+        double bytesPerCall = -1;
+        if (allocated >= 0) {
+            bytesPerCall = (double) (allocatedBytes() - allocated) / calls;
+        }
+        return new Result(nanosPerCall, bytesPerCall, gcCount() - gcCount, gcMillis() - gcMillis);
+    }
+
+    /**
+     * Calls 'workload' 'calls' times after the warmup iterations, timing each call on
+     * its own, so the result's percentiles are per-call latencies. Use this rather than
+     * 'measure' for calls long enough (tens of microseconds or more) that one
+     * System.nanoTime pair around each is accurate.
+     */
+    public Result sample(Workload workload, int calls) {
+        if (calls < 1) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < this.warmupIterations; i++) {
+            this.iteration(workload);
+        }
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long allocated = allocatedBytes();
+        long result = 0;
+        double[] nanosPerCall = new double[calls];
+        for (int i = 0; i < calls; i++) {
+            long start = System.nanoTime();
+            result += workload.run();
+            nanosPerCall[i] = System.nanoTime() - start;
+        }
+        sink += result;
+        double bytesPerCall = -1;
+        if (allocated >= 0) {
+            bytesPerCall = (double) (allocatedBytes() - allocated) / calls;
+        }
+        return new Result(nanosPerCall, bytesPerCall, gcCount() - gcCount, gcMillis() - gcMillis);
+    }
+
+    private long iteration(Workload workload) {
+        long result = 0;
+        long calls = 0;
+        long start = System.nanoTime();
+        do {
+            result += workload.run();
+            calls++;
+        } while (System.nanoTime() - start < this.minIterationNanos);
+        sink += result;
+        return calls;
+    }
+
+    /**
+     * Runs 'main' in a new JVM with this JVM's classpath, passing 'args', and waits for
+     * it to finish. Its output goes to this process's output.
+     */
+    public static void fork(Class<?> main, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(main.getName());
+        command.addAll(Arrays.asList(args));
+        int status = new ProcessBuilder(command).inheritIO().start().waitFor();
+        if (status != 0) {
+            throw new IllegalStateException(main.getName() + " exited with status " + status);
+        }
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * The measured iterations of one benchmark.
+     */
+    public static class Result {
+        private final double[] sorted;
+        private final double bytesPerCall;
+        private final long gcCount;
+        private final long gcMillis;
+
+        private Result(double[] nanosPerCall, double bytesPerCall, long gcCount, long gcMillis) {
+            this.sorted = nanosPerCall.clone();
+            Arrays.sort(this.sorted);
+            this.bytesPerCall = bytesPerCall;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        /**
+         * Nanoseconds per call at percentile 'p' (0 to 100) of the measured iterations,
+         * using the nearest-rank method.
+         */
+        public double getPercentile(double p) {
+            if (p < 0 || p > 100) {
+                throw new IllegalArgumentException();
+            }
+            int rank = (int) Math.ceil(p / 100 * this.sorted.length);
+            return this.sorted[Math.max(0, rank - 1)];
+        }
+
+        public double getMedian() {
+            return this.getPercentile(50);
+        }
+
+        public double getMean() {
+            double total = 0;
+            for (double sample : this.sorted) {
+                total += sample;
+            }
+            return total / this.sorted.length;
+        }
+
+        /**
+         * Bytes allocated per call by the measuring thread, or -1 if the JVM cannot
+         * report it.
+         */
+        public double getBytesPerCall() {
+            return this.bytesPerCall;
+        }
+
+        public long getGcCount() {
+            return this.gcCount;
+        }
+
+        public long getGcMillis() {
+            return this.gcMillis;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package calculator.ast;
+
+import datastructures.concrete.DynamicArrayList;
+import datastructures.interfaces.IList;
+
+/**
+ * An operation AstNode with exactly two operands, such as '+' or '^', kept in
+ * fields instead of a children list.
+ *
+ * Evaluation and simplification read the operands through getLeft and getRight (or
+ * ExpressionManipulators.operand), so they never need a list. getChildren still
+ * works for code that expects one: the list is built on first use and should be
+ * treated as read-only, since changing it does not change the operands. AstNode
+ * itself is given a shared empty list rather than null.
+ */
+public class BinaryNode extends AstNode {
+    private final AstNode left;
+    private final AstNode right;
+    private IList<AstNode> children = null;
+
+    public BinaryNode(String name, AstNode left, AstNode right) {
+        super(name, NoChildren.INSTANCE);
+        if (left == null || right == null) {
+            throw new IllegalArgumentException("operands may not be null");
+        }
+        this.left = left;
+        this.right = right;
+    }
+
+    public AstNode getLeft() {
+        return this.left;
+    }
+
+    public AstNode getRight() {
+        return this.right;
+    }
+
+    @Override
+    public IList<AstNode> getChildren() {
+        if (this.children == null) {
+            IList<AstNode> list = new DynamicArrayList<>(2);
+            list.add(this.left);
+            list.add(this.right);
+            this.children = list;
+        }
+        return this.children;
+    }
+
+    @Override
+    public String toString() {
+        return this.getName() + "(" + this.left + ", " + this.right + ")";
+    }
+}
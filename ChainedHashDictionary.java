@@ -0,0 +1,168 @@
+package datastructures.concrete;
+
+import datastructures.interfaces.IDictionary;
+import misc.MemoryLayout;
+import misc.exceptions.NoSuchKeyException;
+
+/**
+ * An IDictionary backed by a hash table with separate chaining.
+ *
+ * 'get', 'put', 'remove' and 'containsKey' take O(1) expected time. The table doubles
+ * once it holds more than 3/4 as many entries as it has buckets. Every entry keeps
+ * its key's hash code, so resizing never calls hashCode again and equals is only
+ * called on keys whose hash codes already match. Null keys are allowed.
+ */
+public class ChainedHashDictionary<K, V> implements IDictionary<K, V> {
+    private static final int DEFAULT_BUCKETS = 16;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private Entry<K, V>[] buckets;
+    private int size;
+
+    public ChainedHashDictionary() {
+        this.buckets = makeBuckets(DEFAULT_BUCKETS);
+        this.size = 0;
+    }
+
+    @Override
+    public V get(K key) {
+        Entry<K, V> entry = find(key);
+        if (entry == null) {
+            throw new NoSuchKeyException();
+        }
+        return entry.value;
+    }
+
+    /**
+     * Returns the value stored under 'key', or 'defaultValue' if there is none.
+     * Unlike 'containsKey' followed by 'get', this hashes and searches only once.
+     */
+    public V getOrDefault(K key, V defaultValue) {
+        Entry<K, V> entry = find(key);
+        return entry == null ? defaultValue : entry.value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        int hash = hash(key);
+        int index = indexFor(hash, buckets.length);
+        for (Entry<K, V> entry = buckets[index]; entry != null; entry = entry.next) {
+            if (entry.hash == hash && keysEqual(entry.key, key)) {
+                entry.value = value;
+                return;
+            }
+        }
+        buckets[index] = new Entry<>(hash, key, value, buckets[index]);
+        size++;
+        if (size > MAX_LOAD_FACTOR * buckets.length) {
+            resize(2 * buckets.length);
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        int hash = hash(key);
+        int index = indexFor(hash, buckets.length);
+        Entry<K, V> previous = null;
+        for (Entry<K, V> entry = buckets[index]; entry != null; entry = entry.next) {
+            if (entry.hash == hash && keysEqual(entry.key, key)) {
+                if (previous == null) {
+                    buckets[index] = entry.next;
+                } else {
+                    previous.next = entry.next;
+                }
+                size--;
+                return entry.value;
+            }
+            previous = entry;
+        }
+        throw new NoSuchKeyException();
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return find(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Estimated bytes retained by this dictionary: the dictionary object, the bucket
+     * array, every entry, and each key and value as measured by MemoryLayout.boxed.
+     */
+    public long estimateBytes() {
+        long bytes = MemoryLayout.object(1, 4) + MemoryLayout.referenceArray(buckets.length);
+        for (Entry<K, V> head : buckets) {
+            for (Entry<K, V> entry = head; entry != null; entry = entry.next) {
+                bytes += MemoryLayout.object(3, 4) + MemoryLayout.boxed(entry.key)
+                        + MemoryLayout.boxed(entry.value);
+            }
+        }
+        return bytes;
+    }
+
+    private Entry<K, V> find(K key) {
+        int hash = hash(key);
+        for (Entry<K, V> entry = buckets[indexFor(hash, buckets.length)]; entry != null; entry = entry.next) {
+            if (entry.hash == hash && keysEqual(entry.key, key)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void resize(int bucketCount) {
+        Entry<K, V>[] bigger = makeBuckets(bucketCount);
+        for (Entry<K, V> head : buckets) {
+            Entry<K, V> entry = head;
+            while (entry != null) {
+                Entry<K, V> next = entry.next;
+                int index = indexFor(entry.hash, bucketCount);
+                entry.next = bigger[index];
+                bigger[index] = entry;
+                entry = next;
+            }
+        }
+        buckets = bigger;
+    }
+
+    // Spreads the high bits down, since the bucket count is a power of two and only
+    // the low bits pick the bucket.
+    private static int hash(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int indexFor(int hash, int bucketCount) {
+        return hash & (bucketCount - 1);
+    }
+
+    private static boolean keysEqual(Object a, Object b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> Entry<K, V>[] makeBuckets(int count) {
+        return (Entry<K, V>[]) new Entry[count];
+    }
+
+    private static class Entry<K, V> {
+        private final int hash;
+        private final K key;
+        private V value;
+        private Entry<K, V> next;
+
+        Entry(int hash, K key, V value, Entry<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+}
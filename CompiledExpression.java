@@ -0,0 +1,267 @@
+package calculator.ast;
+
+import calculator.errors.EvaluationError;
+import datastructures.interfaces.IDictionary;
+
+import java.util.Arrays;
+
+/**
+ * An expression translated into a flat postfix program so it can be evaluated many
+ * times without walking AstNodes or looking variables up by name.
+ *
+ * A fixed list of variables becomes numbered slots whose values are passed to
+ * 'evaluate'. Every other variable is replaced by its definition at compile time,
+ * and subexpressions that only involve numbers are folded into a single constant.
+ *
+ * Instances are immutable and may be evaluated from several threads at once, as
+ * long as each thread passes its own stack.
+ */
+final class CompiledExpression {
+    static final int CONST = 0;
+    static final int LOAD = 1;
+    static final int ADD = 2;
+    static final int SUB = 3;
+    static final int MUL = 4;
+    static final int DIV = 5;
+    static final int POW = 6;
+    static final int NEG = 7;
+    static final int SIN = 8;
+    static final int COS = 9;
+
+    private final int[] opcodes;
+    // For CONST the index into 'constants', for LOAD the slot number; unused otherwise.
+    private final int[] operands;
+    private final double[] constants;
+    private final int maxStack;
+
+    private CompiledExpression(int[] opcodes, int[] operands, double[] constants, int maxStack) {
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.constants = constants;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * Compiles 'node'. The variable named slotNames[i] is read from slot i.
+     *
+     * @throws EvaluationError  if the expression uses an undefined variable or an unknown operation
+     */
+    static CompiledExpression compile(IDictionary<String, AstNode> variables, AstNode node, String... slotNames) {
+        Builder builder = new Builder(variables, slotNames);
+        builder.emit(node);
+        return builder.build();
+    }
+
+    /**
+     * Returns a stack large enough for 'evaluate'.
+     */
+    double[] newStack() {
+        return new double[Math.max(1, maxStack)];
+    }
+
+    /**
+     * Evaluates the program with the given slot values. 'stack' must come from 'newStack'.
+     */
+    double evaluate(double[] slots, double[] stack) {
+        int top = -1;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            switch (opcodes[pc]) {
+                case CONST:
+                    stack[++top] = constants[operands[pc]];
+                    break;
+                case LOAD:
+                    stack[++top] = slots[operands[pc]];
+                    break;
+                case ADD:
+                    top--;
+                    stack[top] = stack[top] + stack[top + 1];
+                    break;
+                case SUB:
+                    top--;
+                    stack[top] = stack[top] - stack[top + 1];
+                    break;
+                case MUL:
+                    top--;
+                    stack[top] = stack[top] * stack[top + 1];
+                    break;
+                case DIV:
+                    top--;
+                    stack[top] = stack[top] / stack[top + 1];
+                    break;
+                case POW:
+                    top--;
+                    stack[top] = Math.pow(stack[top], stack[top + 1]);
+                    break;
+                case NEG:
+                    stack[top] = -1 * stack[top];
+                    break;
+                case SIN:
+                    stack[top] = Math.sin(stack[top]);
+                    break;
+                case COS:
+                    stack[top] = Math.cos(stack[top]);
+                    break;
+                default:
+                    throw new IllegalStateException("unknown opcode " + opcodes[pc]);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Applies the arithmetic 'opcode' (ADD to COS) to its operands, exactly as
+     * 'evaluate' would. Unary opcodes ignore 'right'.
+     */
+    static double apply(int opcode, double left, double right) {
+        switch (opcode) {
+            case ADD:
+                return left + right;
+            case SUB:
+                return left - right;
+            case MUL:
+                return left * right;
+            case DIV:
+                return left / right;
+            case POW:
+                return Math.pow(left, right);
+            case NEG:
+                return -1 * left;
+            case SIN:
+                return Math.sin(left);
+            case COS:
+                return Math.cos(left);
+            default:
+                throw new IllegalArgumentException("not an arithmetic opcode: " + opcode);
+        }
+    }
+
+    static int opcodeOf(String name) {
+        if (name.equals("+")) {
+            return ADD;
+        } else if (name.equals("-")) {
+            return SUB;
+        } else if (name.equals("*")) {
+            return MUL;
+        } else if (name.equals("/")) {
+            return DIV;
+        } else if (name.equals("^")) {
+            return POW;
+        } else if (name.equals("negate")) {
+            return NEG;
+        } else if (name.equals("sin")) {
+            return SIN;
+        } else if (name.equals("cos")) {
+            return COS;
+        }
+        return -1;
+    }
+
+    static boolean isBinary(int opcode) {
+        return opcode >= ADD && opcode <= POW;
+    }
+
+    private static class Builder {
+        private final IDictionary<String, AstNode> variables;
+        private final String[] slotNames;
+        private int[] opcodes = new int[16];
+        private int[] operands = new int[16];
+        private double[] constants = new double[16];
+        private int length = 0;
+        private int constantCount = 0;
+        private int depth = 0;
+        private int maxDepth = 0;
+
+        Builder(IDictionary<String, AstNode> variables, String[] slotNames) {
+            this.variables = variables;
+            this.slotNames = slotNames;
+        }
+
+        // Appends the code for 'node'. Returns true if that code is a single CONST.
+        boolean emit(AstNode node) {
+            if (node.isNumber()) {
+                pushConstant(node.getNumericValue());
+                return true;
+            } else if (node.isVariable()) {
+                String name = node.getName();
+                for (int slot = 0; slot < slotNames.length; slot++) {
+                    if (slotNames[slot].equals(name)) {
+                        append(LOAD, slot);
+                        push();
+                        return false;
+                    }
+                }
+                AstNode definition = ExpressionManipulators.lookupVariable(variables, name);
+                if (definition == null) {
+                    throw new EvaluationError("expression contains an undefined variable");
+                }
+                return emit(definition);
+            }
+            String name = node.getName();
+            int opcode = opcodeOf(name);
+            if (opcode < 0) {
+                if (!ExpressionManipulators.operationsDefined(name)) {
+                    throw new EvaluationError("Attempted to call an unknown operation");
+                }
+                // Defined but non-arithmetic operations evaluate to 0, as in toDouble.
+                pushConstant(0.0);
+                return true;
+            }
+            int start = length;
+            boolean constant = emit(ExpressionManipulators.operand(node, 0));
+            if (isBinary(opcode)) {
+                constant = emit(ExpressionManipulators.operand(node, 1)) && constant;
+            }
+            append(opcode, 0);
+            if (isBinary(opcode)) {
+                depth--;
+            }
+            if (constant) {
+                // Fold: run what was just emitted and keep only its value.
+                double value = foldRange(start);
+                length = start;
+                constantCount = operands[start];
+                depth--;
+                pushConstant(value);
+            }
+            return constant;
+        }
+
+        CompiledExpression build() {
+            return new CompiledExpression(Arrays.copyOf(opcodes, length),
+                    Arrays.copyOf(operands, length),
+                    Arrays.copyOf(constants, constantCount), maxDepth);
+        }
+
+        private double foldRange(int start) {
+            int[] code = Arrays.copyOfRange(opcodes, start, length);
+            int[] args = Arrays.copyOfRange(operands, start, length);
+            CompiledExpression piece = new CompiledExpression(code, args, constants, 3);
+            return piece.evaluate(new double[0], new double[3]);
+        }
+
+        private void pushConstant(double value) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, 2 * constants.length);
+            }
+            constants[constantCount] = value;
+            append(CONST, constantCount);
+            constantCount++;
+            push();
+        }
+
+        private void push() {
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        private void append(int opcode, int operand) {
+            if (length == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, 2 * length);
+                operands = Arrays.copyOf(operands, 2 * length);
+            }
+            opcodes[length] = opcode;
+            operands[length] = operand;
+            length++;
+        }
+    }
+}
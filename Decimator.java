@@ -0,0 +1,158 @@
+package calculator.ast;
+
+/**
+ * Reduces a series of points to roughly what an image of a given width can show,
+ * while keeping the peaks of the curve visible.
+ *
+ * Both methods expect the points to be sorted by x.
+ */
+final class Decimator {
+    private Decimator() {
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets: keeps the first and last point, splits the rest
+     * into 'threshold - 2' buckets and from each keeps the point forming the largest
+     * triangle with the previously kept point and the average of the next bucket.
+     *
+     * Writes the kept points into outX/outY (which must hold 'threshold' values) and
+     * returns how many were written. If 'count' is already at most 'threshold', the
+     * points are copied unchanged.
+     */
+    static int lttb(double[] xs, double[] ys, int count, int threshold, double[] outX, double[] outY) {
+        if (count <= threshold || threshold < 3) {
+            int n = Math.min(count, outX.length);
+            System.arraycopy(xs, 0, outX, 0, n);
+            System.arraycopy(ys, 0, outY, 0, n);
+            return n;
+        }
+        double bucketSize = (double) (count - 2) / (threshold - 2);
+        int kept = 0;
+        int a = 0;
+        outX[kept] = xs[0];
+        outY[kept] = ys[0];
+        kept++;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+            int nextStart = end;
+            int nextEnd = Math.min(count, (int) ((bucket + 2) * bucketSize) + 1);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += xs[i];
+                avgY += ys[i];
+            }
+            avgX /= Math.max(1, nextEnd - nextStart);
+            avgY /= Math.max(1, nextEnd - nextStart);
+
+            double maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((xs[a] - avgX) * (ys[i] - ys[a])
+                        - (xs[a] - xs[i]) * (avgY - ys[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            outX[kept] = xs[chosen];
+            outY[kept] = ys[chosen];
+            kept++;
+            a = chosen;
+        }
+        outX[kept] = xs[count - 1];
+        outY[kept] = ys[count - 1];
+        kept++;
+        return kept;
+    }
+
+    /**
+     * Min/max per bucket, one point at a time: the x range is split into 'buckets'
+     * equal columns and for each column only its lowest and highest point are kept,
+     * in x order. Memory use depends on the number of buckets, not on the number of
+     * points added. Points whose y is not a number are dropped.
+     */
+    static class MinMaxBuckets {
+        private final double minX;
+        private final double width;
+        private final int buckets;
+        private final double[] outX;
+        private final double[] outY;
+        private int kept;
+
+        private int current = -1;
+        private double lowX;
+        private double lowY;
+        private double highX;
+        private double highY;
+
+        MinMaxBuckets(double minX, double maxX, int buckets) {
+            this.minX = minX;
+            this.width = maxX - minX;
+            this.buckets = buckets;
+            this.outX = new double[2 * buckets];
+            this.outY = new double[2 * buckets];
+        }
+
+        void add(double x, double y) {
+            if (Double.isNaN(y)) {
+                return;
+            }
+            int bucket = width > 0 ? (int) ((x - minX) / width * buckets) : 0;
+            bucket = Math.max(0, Math.min(buckets - 1, bucket));
+            if (bucket != current) {
+                flush();
+                current = bucket;
+                lowX = x;
+                lowY = y;
+                highX = x;
+                highY = y;
+            } else if (y < lowY) {
+                lowX = x;
+                lowY = y;
+            } else if (y > highY) {
+                highX = x;
+                highY = y;
+            }
+        }
+
+        /**
+         * Returns the number of points kept; they are in getX()/getY().
+         */
+        int finish() {
+            flush();
+            current = -1;
+            return kept;
+        }
+
+        double[] getX() {
+            return outX;
+        }
+
+        double[] getY() {
+            return outY;
+        }
+
+        private void flush() {
+            if (current < 0) {
+                return;
+            }
+            if (lowX == highX) {
+                keep(lowX, lowY);
+            } else if (lowX < highX) {
+                keep(lowX, lowY);
+                keep(highX, highY);
+            } else {
+                keep(highX, highY);
+                keep(lowX, lowY);
+            }
+        }
+
+        private void keep(double x, double y) {
+            outX[kept] = x;
+            outY[kept] = y;
+            kept++;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package datastructures.concrete;
+
+import datastructures.interfaces.IList;
+import misc.MemoryLayout;
+import misc.exceptions.EmptyContainerException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A growable list of primitive doubles.
+ *
+ * This is not an IList: storing a double in an IList<Double> allocates a Double
+ * object, while this list stores values directly in a double[]. Use 'asList' to pass
+ * it to code that expects an IList<Double>, and 'copyOf' to go the other way.
+ */
+public class DoubleArrayList implements Iterable<Double> {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private double[] data;
+    private int size;
+
+    public DoubleArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty list with room for 'capacity' values before it has to grow.
+     */
+    public DoubleArrayList(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.data = new double[Math.max(1, capacity)];
+        this.size = 0;
+    }
+
+    /**
+     * Returns a new list holding the values of 'list', in order.
+     */
+    public static DoubleArrayList copyOf(IList<Double> list) {
+        DoubleArrayList result = new DoubleArrayList(list.size());
+        for (double value : list) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    public void add(double value) {
+        ensureCapacity(size + 1);
+        data[size] = value;
+        size++;
+    }
+
+    /**
+     * Appends every value of 'values'.
+     */
+    public void addAll(double[] values) {
+        addAll(values, values.length);
+    }
+
+    /**
+     * Appends values[0] through values[count - 1].
+     */
+    public void addAll(double[] values, int count) {
+        ensureCapacity(size + count);
+        System.arraycopy(values, 0, data, size, count);
+        size += count;
+    }
+
+    /**
+     * Removes and returns the last value.
+     *
+     * @throws EmptyContainerException  if the list is empty
+     */
+    public double remove() {
+        if (size == 0) {
+            throw new EmptyContainerException();
+        }
+        size--;
+        return data[size];
+    }
+
+    public double get(int index) {
+        checkIndex(index, size);
+        return data[index];
+    }
+
+    public void set(int index, double value) {
+        checkIndex(index, size);
+        data[index] = value;
+    }
+
+    public void insert(int index, double value) {
+        checkIndex(index, size + 1);
+        ensureCapacity(size + 1);
+        System.arraycopy(data, index, data, index + 1, size - index);
+        data[index] = value;
+        size++;
+    }
+
+    public double delete(int index) {
+        checkIndex(index, size);
+        double value = data[index];
+        System.arraycopy(data, index + 1, data, index, size - index - 1);
+        size--;
+        return value;
+    }
+
+    /**
+     * Returns the index of the first value equal to 'value' (as compared by
+     * Double.compare, so NaN finds NaN), or -1 if there is none.
+     */
+    public int indexOf(double value) {
+        for (int i = 0; i < size; i++) {
+            if (Double.compare(data[i], value) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(double value) {
+        return indexOf(value) != -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns a new array holding the values in order.
+     */
+    public double[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Makes sure at least 'capacity' values fit without growing again.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, 2 * data.length));
+        }
+    }
+
+    /**
+     * Estimated bytes retained by this list: the list object and its double[].
+     */
+    public long estimateBytes() {
+        return MemoryLayout.object(1, 4) + MemoryLayout.primitiveArray(data.length, 8);
+    }
+
+    /**
+     * Iterates over the values without boxing them (use 'nextDouble').
+     */
+    @Override
+    public PrimitiveIterator.OfDouble iterator() {
+        return new PrimitiveIterator.OfDouble() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public double nextDouble() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                double value = data[next];
+                next++;
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Returns an IList<Double> view of this list. Changes through either one are
+     * visible in the other. Values are boxed only when read through the view.
+     */
+    public IList<Double> asList() {
+        return new ListView();
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + bound);
+        }
+    }
+
+    private class ListView implements IList<Double> {
+        @Override
+        public void add(Double item) {
+            DoubleArrayList.this.add(item);
+        }
+
+        @Override
+        public Double remove() {
+            return DoubleArrayList.this.remove();
+        }
+
+        @Override
+        public Double get(int index) {
+            return DoubleArrayList.this.get(index);
+        }
+
+        @Override
+        public void set(int index, Double item) {
+            DoubleArrayList.this.set(index, item);
+        }
+
+        @Override
+        public void insert(int index, Double item) {
+            DoubleArrayList.this.insert(index, item);
+        }
+
+        @Override
+        public Double delete(int index) {
+            return DoubleArrayList.this.delete(index);
+        }
+
+        @Override
+        public int indexOf(Double item) {
+            return item == null ? -1 : DoubleArrayList.this.indexOf(item);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Double other) {
+            return indexOf(other) != -1;
+        }
+
+        @Override
+        public Iterator<Double> iterator() {
+            return DoubleArrayList.this.iterator();
+        }
+    }
+}
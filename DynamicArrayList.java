@@ -0,0 +1,300 @@
+package datastructures.concrete;
+
+import datastructures.interfaces.IList;
+import misc.MemoryLayout;
+import misc.exceptions.EmptyContainerException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An IList backed by a growable array.
+ *
+ * Unlike DoubleLinkedList, 'get' and 'set' take O(1) time at any index, and elements
+ * sit next to each other in memory. 'add' and 'remove' at the end are amortized O(1);
+ * 'insert' and 'delete' take O(n - index) time because later elements are shifted.
+ */
+public class DynamicArrayList<T> implements IList<T> {
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private T[] data;
+    private int size;
+
+    public DynamicArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty list with room for 'capacity' elements before it has to grow.
+     */
+    public DynamicArrayList(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.data = makeArray(Math.max(1, capacity));
+        this.size = 0;
+    }
+
+    @Override
+    public void add(T item) {
+        ensureCapacity(size + 1);
+        data[size] = item;
+        size++;
+    }
+
+    @Override
+    public T remove() {
+        if (size == 0) {
+            throw new EmptyContainerException();
+        }
+        size--;
+        T item = data[size];
+        data[size] = null;
+        return item;
+    }
+
+    @Override
+    public T get(int index) {
+        checkIndex(index, size);
+        return data[index];
+    }
+
+    @Override
+    public void set(int index, T item) {
+        checkIndex(index, size);
+        data[index] = item;
+    }
+
+    @Override
+    public void insert(int index, T item) {
+        checkIndex(index, size + 1);
+        ensureCapacity(size + 1);
+        System.arraycopy(data, index, data, index + 1, size - index);
+        data[index] = item;
+        size++;
+    }
+
+    @Override
+    public T delete(int index) {
+        checkIndex(index, size);
+        T item = data[index];
+        System.arraycopy(data, index + 1, data, index, size - index - 1);
+        size--;
+        data[size] = null;
+        return item;
+    }
+
+    @Override
+    public int indexOf(T item) {
+        for (int i = 0; i < size; i++) {
+            if (item == null ? data[i] == null : item.equals(data[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(T other) {
+        return indexOf(other) != -1;
+    }
+
+    /**
+     * Appends every element of 'items', in order, growing the array at most once.
+     */
+    public void addAll(IList<? extends T> items) {
+        insertAll(size, items);
+    }
+
+    /**
+     * Inserts every element of 'items', in order, starting at 'index'. The elements
+     * after 'index' are shifted once, not once per inserted element.
+     */
+    public void insertAll(int index, IList<? extends T> items) {
+        checkIndex(index, size + 1);
+        if (items == this) {
+            // The shift below would overwrite elements before they are read.
+            DynamicArrayList<T> copy = new DynamicArrayList<>(size);
+            System.arraycopy(data, 0, copy.data, 0, size);
+            copy.size = size;
+            items = copy;
+        }
+        int count = items.size();
+        ensureCapacity(size + count);
+        System.arraycopy(data, index, data, index + count, size - index);
+        int at = index;
+        for (T item : items) {
+            data[at] = item;
+            at++;
+        }
+        size += count;
+    }
+
+    /**
+     * Deletes the elements at indices 'from' (inclusive) through 'to' (exclusive).
+     */
+    public void removeRange(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("range " + from + " to " + to + ", size " + size);
+        }
+        System.arraycopy(data, to, data, from, size - to);
+        int newSize = size - (to - from);
+        for (int i = newSize; i < size; i++) {
+            data[i] = null;
+        }
+        size = newSize;
+    }
+
+    /**
+     * Returns a view of the elements at indices 'from' (inclusive) through 'to'
+     * (exclusive). 'get' and 'set' on the view go straight to this list's array.
+     * The view does not support changing its size, and is only valid as long as
+     * this list's size does not change.
+     */
+    public IList<T> subList(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("range " + from + " to " + to + ", size " + size);
+        }
+        return new SubList(from, to - from);
+    }
+
+    /**
+     * Makes sure at least 'capacity' elements fit without growing again.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            T[] bigger = makeArray(Math.max(capacity, 2 * data.length));
+            System.arraycopy(data, 0, bigger, 0, size);
+            data = bigger;
+        }
+    }
+
+    /**
+     * Estimated bytes retained by this list: the list object, its array, and each
+     * element as measured by MemoryLayout.boxed.
+     */
+    public long estimateBytes() {
+        long bytes = MemoryLayout.object(1, 4) + MemoryLayout.referenceArray(data.length);
+        for (int i = 0; i < size; i++) {
+            bytes += MemoryLayout.boxed(data[i]);
+        }
+        return bytes;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new DynamicArrayIterator();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T[] makeArray(int capacity) {
+        return (T[]) new Object[capacity];
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + bound);
+        }
+    }
+
+    private class DynamicArrayIterator implements Iterator<T> {
+        private int next;
+        private final int end;
+
+        DynamicArrayIterator() {
+            this(0, size);
+        }
+
+        DynamicArrayIterator(int start, int end) {
+            this.next = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T item = data[next];
+            next++;
+            return item;
+        }
+    }
+
+    private class SubList implements IList<T> {
+        private final int start;
+        private final int length;
+
+        SubList(int start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public void add(T item) {
+            throw new UnsupportedOperationException("a subList view cannot change size");
+        }
+
+        @Override
+        public T remove() {
+            throw new UnsupportedOperationException("a subList view cannot change size");
+        }
+
+        @Override
+        public T get(int index) {
+            checkIndex(index, length);
+            return data[start + index];
+        }
+
+        @Override
+        public void set(int index, T item) {
+            checkIndex(index, length);
+            data[start + index] = item;
+        }
+
+        @Override
+        public void insert(int index, T item) {
+            throw new UnsupportedOperationException("a subList view cannot change size");
+        }
+
+        @Override
+        public T delete(int index) {
+            throw new UnsupportedOperationException("a subList view cannot change size");
+        }
+
+        @Override
+        public int indexOf(T item) {
+            for (int i = 0; i < length; i++) {
+                if (item == null ? data[start + i] == null : item.equals(data[start + i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+
+        @Override
+        public boolean contains(T other) {
+            return indexOf(other) != -1;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new DynamicArrayIterator(start, start + length);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package analysis.experiments;
+
+import datastructures.concrete.ArrayDictionary;
+import datastructures.concrete.ChainedHashDictionary;
+import datastructures.concrete.DoubleLinkedList;
+import datastructures.concrete.DynamicArrayList;
+import datastructures.concrete.UnrolledLinkedList;
+import datastructures.interfaces.IDictionary;
+import datastructures.interfaces.IList;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Re-runs experiments 1 to 4 with the Benchmark harness and writes benchmark1.csv to
+ * benchmark4.csv, which have the same columns and input sizes as experiment1.csv to
+ * experiment4.csv so the existing plots can be redrawn from them.
+ *
+ * Timings are the median nanoseconds per call (rather than whole milliseconds), so
+ * the small sizes no longer read as 0. Each experiment runs in its own JVM; pass an
+ * experiment number to run just that one in this JVM instead.
+ *
+ * - Experiment 1: put InputDictionarySize keys into an empty ArrayDictionary (Test1)
+ *   and ChainedHashDictionary (Test2).
+ * - Experiment 2: add InputListSize items to an empty DoubleLinkedList (Test1),
+ *   DynamicArrayList (Test2) and UnrolledLinkedList (Test3).
+ * - Experiment 3: get(InputIndices) on a DoubleLinkedList of MAX_SIZE items.
+ * - Experiment 4: estimated bytes held by a DoubleLinkedList (ResultsTest1) and
+ *   DynamicArrayList (ResultsTest2) of InputListSize Longs, as in MemoryExperiment.
+ *
+ * Allocation per call and garbage collection during each experiment are reported on
+ * standard error.
+ */
+public class ExperimentBenchmarks {
+    private static final int MAX_SIZE = 20000;
+    private static final int STEP = 100;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long MIN_ITERATION_NANOS = 2_000_000;
+
+    private static final Benchmark BENCHMARK =
+            new Benchmark(WARMUP_ITERATIONS, MEASUREMENT_ITERATIONS, MIN_ITERATION_NANOS);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            for (int experiment = 1; experiment <= 4; experiment++) {
+                Benchmark.fork(ExperimentBenchmarks.class, String.valueOf(experiment));
+            }
+            return;
+        }
+        int experiment = Integer.parseInt(args[0]);
+        if (experiment == 1) {
+            experiment1();
+        } else if (experiment == 2) {
+            experiment2();
+        } else if (experiment == 3) {
+            experiment3();
+        } else if (experiment == 4) {
+            experiment4();
+        } else {
+            throw new IllegalArgumentException("no experiment " + experiment);
+        }
+    }
+
+    private static void experiment1() throws FileNotFoundException {
+        Summary summary = new Summary("experiment 1");
+        try (PrintStream out = new PrintStream("benchmark1.csv")) {
+            out.println("InputDictionarySize,Test1Results,Test2Results");
+            for (int size = 0; size < MAX_SIZE; size += STEP) {
+                final int n = size;
+                out.println(size
+                        + "," + summary.time(() -> fill(new ArrayDictionary<>(), n))
+                        + "," + summary.time(() -> fill(new ChainedHashDictionary<>(), n)));
+            }
+        }
+        summary.print();
+    }
+
+    private static void experiment2() throws FileNotFoundException {
+        Summary summary = new Summary("experiment 2");
+        try (PrintStream out = new PrintStream("benchmark2.csv")) {
+            out.println("InputListSize,Test1Results,Test2Results,Test3Results");
+            for (int size = 0; size < MAX_SIZE; size += STEP) {
+                final int n = size;
+                out.println(size
+                        + "," + summary.time(() -> fill(new DoubleLinkedList<>(), n))
+                        + "," + summary.time(() -> fill(new DynamicArrayList<>(), n))
+                        + "," + summary.time(() -> fill(new UnrolledLinkedList<>(), n)));
+            }
+        }
+        summary.print();
+    }
+
+    private static void experiment3() throws FileNotFoundException {
+        Summary summary = new Summary("experiment 3");
+        IList<Long> list = new DoubleLinkedList<>();
+        fill(list, MAX_SIZE);
+        try (PrintStream out = new PrintStream("benchmark3.csv")) {
+            out.println("InputIndices,TestResults");
+            for (int index = 0; index < MAX_SIZE; index += STEP) {
+                final int i = index;
+                out.println(index + "," + summary.time(() -> list.get(i)));
+            }
+        }
+        summary.print();
+    }
+
+    private static void experiment4() throws FileNotFoundException {
+        try (PrintStream out = new PrintStream("benchmark4.csv")) {
+            out.println("InputListSize,ResultsTest1,ResultsTest2");
+            for (int size = 0; size < MAX_SIZE; size += STEP) {
+                IList<Long> linked = new DoubleLinkedList<>();
+                DynamicArrayList<Long> array = new DynamicArrayList<>();
+                fill(linked, size);
+                fill(array, size);
+                out.println(size + "," + MemoryExperiment.estimateLinkedListBytes(linked)
+                        + "," + array.estimateBytes());
+            }
+        }
+    }
+
+    private static long fill(IDictionary<Long, Long> dictionary, int size) {
+        for (long i = 0; i < size; i++) {
+            dictionary.put(i, i);
+        }
+        return dictionary.size();
+    }
+
+    private static long fill(IList<Long> list, int size) {
+        for (long i = 0; i < size; i++) {
+            list.add(i);
+        }
+        return list.size();
+    }
+
+    /**
+     * Accumulates the allocation and garbage collection figures of every benchmark in
+     * one experiment.
+     */
+    private static class Summary {
+        private final String name;
+        private double bytesPerCall = 0;
+        private long gcCount = 0;
+        private long gcMillis = 0;
+        private int benchmarks = 0;
+
+        public Summary(String name) {
+            this.name = name;
+        }
+
+        public long time(Benchmark.Workload workload) {
+            Benchmark.Result result = BENCHMARK.measure(workload);
+            this.bytesPerCall += result.getBytesPerCall();
+            this.gcCount += result.getGcCount();
+            this.gcMillis += result.getGcMillis();
+            this.benchmarks++;
+            return Math.round(result.getMedian());
+        }
+
+        public void print() {
+            System.err.println(this.name + ": " + this.benchmarks + " benchmarks, "
+                    + Math.round(this.bytesPerCall / this.benchmarks) + " bytes allocated per call on average, "
+                    + this.gcCount + " collections taking " + this.gcMillis + " ms");
+        }
+    }
+}
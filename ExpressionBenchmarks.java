@@ -0,0 +1,147 @@
+package analysis.experiments;
+
+import calculator.ast.AstNode;
+import calculator.ast.ExpressionManipulators;
+import calculator.ast.FlatExpression;
+import calculator.gui.RasterImageDrawer;
+import calculator.interpreter.Environment;
+import datastructures.concrete.DoubleLinkedList;
+import datastructures.interfaces.IList;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Benchmarks ExpressionManipulators.handleToDouble, handleSimplify and plot on
+ * generated expressions and prints one CSV row per benchmark, so changes to the
+ * evaluator or simplifier can be compared run against run.
+ *
+ * The expressions vary along four axes:
+ *
+ * - Nodes: the number of operation nodes in the expression.
+ * - Shape: "balanced" trees have depth about log2(Nodes); "deep" trees are one long
+ *   left-leaning chain with depth Nodes.
+ * - Mix: "arith" uses only +, - and *; "full" also uses /, ^, negate, sin and cos.
+ * - Variables: how many variables the environment defines. Half of the leaves are
+ *   variables when there are any, and every other variable is defined in terms of
+ *   the one before it, so evaluation has to follow chains of definitions.
+ *
+ * flatToDouble and flatSimplify run the same expressions through FlatExpression's
+ * evaluate and simplify, converted once up front, for comparison with the AstNode
+ * versions.
+ *
+ * Each row gives the throughput (calls per second, from the mean), latency
+ * percentiles in nanoseconds and the bytes allocated per call. For evaluate and
+ * simplify the percentiles are over time-boxed iterations of many calls; plot calls
+ * are slow enough to time one by one, so its percentiles are per-call latencies.
+ * The plot cache is cleared before every plot call, and plots are drawn by a
+ * RasterImageDrawer into a temporary file so no display is needed.
+ *
+ * Every expression comes from an ExpressionGenerator seeded with SEED, so runs are
+ * comparable.
+ */
+public class ExpressionBenchmarks {
+    private static final long SEED = 373;
+    private static final int[] NODES = {16, 256, 4096};
+    private static final int[] VARIABLES = {0, 16, 256};
+    private static final String[] SHAPES = {"balanced", "deep"};
+    private static final String[] MIXES = {"arith", "full"};
+
+    private static final String[] ARITH_OPERATIONS = {"+", "-", "*"};
+    private static final String[] FULL_OPERATIONS = {"+", "-", "*", "/", "^", "negate", "sin", "cos"};
+
+    private static final int PLOT_CALLS = 20;
+    private static final int PLOT_MAX_NODES = 256;
+
+    private static final Benchmark BENCHMARK = new Benchmark(3, 10, 20_000_000);
+
+    public static void main(String[] args) throws IOException {
+        File image = File.createTempFile("benchmark", ".png");
+        image.deleteOnExit();
+        RasterImageDrawer drawer = new RasterImageDrawer(640, 480, image);
+
+        System.out.println("Benchmark,Shape,Mix,Nodes,Variables,CallsPerSecond,P50Nanos,P90Nanos,P99Nanos,BytesPerCall");
+        for (String shape : SHAPES) {
+            for (String mix : MIXES) {
+                for (int nodes : NODES) {
+                    for (int variables : VARIABLES) {
+                        run(shape, mix, nodes, variables, drawer);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void run(String shape, String mix, int nodes, int variables, RasterImageDrawer drawer) {
+        ExpressionGenerator generator = new ExpressionGenerator(SEED);
+        String[] operations = mix.equals("arith") ? ARITH_OPERATIONS : FULL_OPERATIONS;
+        double[] weights = new double[operations.length];
+        Arrays.fill(weights, 1);
+        generator.setOperations(operations, weights);
+        generator.setBalance(shape.equals("balanced") ? 1 : 0);
+        generator.setVariables(variables, 2);
+        Environment env = new Environment(null);
+        generator.define(env.getVariables());
+        AstNode expr = generator.expression(nodes);
+
+        AstNode toDouble = call("toDouble", expr);
+        AstNode simplify = call("simplify", expr);
+        String row = "," + shape + "," + mix + "," + nodes + "," + variables + ",";
+        print("toDouble" + row, BENCHMARK.measure(() -> {
+            return Double.doubleToRawLongBits(ExpressionManipulators.handleToDouble(env, toDouble).getNumericValue());
+        }));
+        print("simplify" + row, BENCHMARK.measure(() -> {
+            return ExpressionManipulators.handleSimplify(env, simplify).getChildren().size();
+        }));
+        FlatExpression flat = FlatExpression.of(expr);
+        print("flatToDouble" + row, BENCHMARK.measure(() -> {
+            return Double.doubleToRawLongBits(flat.evaluate(env.getVariables()));
+        }));
+        print("flatSimplify" + row, BENCHMARK.measure(() -> {
+            return flat.simplify(env.getVariables()).size();
+        }));
+
+        if (nodes <= PLOT_MAX_NODES) {
+            // Replacing one leaf with the plotted variable keeps the rest of the tree
+            // (and so its cost) the same as in the other two benchmarks.
+            AstNode plot = call("plot", withLeaf(expr, new AstNode("plotX")), new AstNode("plotX"),
+                    new AstNode(-10), new AstNode(10), new AstNode(0.01));
+            print("plot" + row, BENCHMARK.sample(() -> {
+                ExpressionManipulators.getPlotCache().clear();
+                return ExpressionManipulators.plot(env, plot, drawer, ExpressionManipulators.Decimation.MIN_MAX)
+                        .isNumber() ? 1 : 0;
+            }, PLOT_CALLS));
+        }
+    }
+
+    private static void print(String prefix, Benchmark.Result result) {
+        System.out.println(prefix + Math.round(1e9 / result.getMean())
+                + "," + Math.round(result.getPercentile(50))
+                + "," + Math.round(result.getPercentile(90))
+                + "," + Math.round(result.getPercentile(99))
+                + "," + Math.round(result.getBytesPerCall()));
+    }
+
+    // Returns a copy of 'node' whose leftmost leaf is 'leaf'.
+    private static AstNode withLeaf(AstNode node, AstNode leaf) {
+        if (!node.isOperation()) {
+            return leaf;
+        }
+        IList<AstNode> children = new DoubleLinkedList<>();
+        boolean first = true;
+        for (AstNode child : node.getChildren()) {
+            children.add(first ? withLeaf(child, leaf) : child);
+            first = false;
+        }
+        return new AstNode(node.getName(), children);
+    }
+
+    private static AstNode call(String name, AstNode... arguments) {
+        IList<AstNode> children = new DoubleLinkedList<>();
+        for (AstNode argument : arguments) {
+            children.add(argument);
+        }
+        return new AstNode(name, children);
+    }
+}
@@ -0,0 +1,376 @@
+package analysis.experiments;
+
+import calculator.ast.AstNode;
+import calculator.ast.BinaryNode;
+import calculator.ast.NumberNodes;
+import calculator.ast.UnaryNode;
+import datastructures.interfaces.IDictionary;
+import datastructures.interfaces.IList;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates random expressions and environments for benchmarks and stress tests.
+ *
+ * Everything comes from Randoms seeded with the seed passed to the constructor, so
+ * two generators with the same seed and settings produce the same expressions (in
+ * the same order) and the same variables. Generation never recurses, so trees of a
+ * million nodes or more, even ones that are a single long chain, are fine.
+ *
+ * The settings:
+ *
+ * - Operations and weights: which operations appear and how often. 'negate', 'sin'
+ *   and 'cos' take one operand; everything else takes two.
+ * - Balance: how evenly an operation's nodes are split between its two operands.
+ *   1 splits evenly, giving depth about log2(size); 0 puts everything in the left
+ *   operand, giving one chain as deep as the expression is big.
+ * - Variables and chain length: how many variables 'define' creates (v0, v1, ...).
+ *   They come in chains: the first of each chain is a number and each following one
+ *   is the previous one plus or minus a number, so looking one up means following
+ *   the chain back to its start.
+ * - Variable leaves: the chance that a leaf is a variable rather than a number.
+ * - Sharing: the chance that an operand is an earlier subtree instead of a new one.
+ *   Any sharing makes the expression a DAG with fewer distinct nodes than its size.
+ */
+public class ExpressionGenerator {
+    private static final String[] UNARY_OPERATIONS = {"negate", "sin", "cos"};
+
+    private final long seed;
+    private final Random random;
+
+    private String[] operations = {"+", "-", "*", "/", "^", "negate", "sin", "cos"};
+    private double[] cumulativeWeights = {1, 2, 3, 4, 5, 6, 7, 8};
+    private double balance = 1;
+    private int variables = 0;
+    private int chainLength = 1;
+    private double variableLeaves = 0.5;
+    private double sharing = 0;
+    private int maxConstant = 9;
+
+    public ExpressionGenerator(long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Makes later expressions use 'operations', picking each with probability
+     * proportional to its weight.
+     */
+    public void setOperations(String[] operations, double[] weights) {
+        if (operations.length == 0 || operations.length != weights.length) {
+            throw new IllegalArgumentException();
+        }
+        double[] cumulative = new double[weights.length];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("negative weight");
+            }
+            total += weights[i];
+            cumulative[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("weights sum to zero");
+        }
+        this.operations = operations.clone();
+        this.cumulativeWeights = cumulative;
+    }
+
+    public void setBalance(double balance) {
+        if (balance < 0 || balance > 1) {
+            throw new IllegalArgumentException();
+        }
+        this.balance = balance;
+    }
+
+    public void setVariables(int variables, int chainLength) {
+        if (variables < 0 || chainLength < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.variables = variables;
+        this.chainLength = chainLength;
+    }
+
+    public void setVariableLeaves(double probability) {
+        if (probability < 0 || probability > 1) {
+            throw new IllegalArgumentException();
+        }
+        this.variableLeaves = probability;
+    }
+
+    public void setSharing(double probability) {
+        if (probability < 0 || probability >= 1) {
+            throw new IllegalArgumentException();
+        }
+        this.sharing = probability;
+    }
+
+    /**
+     * Makes number leaves and the numbers in variable definitions range over 1 to
+     * 'maxConstant'.
+     */
+    public void setMaxConstant(int maxConstant) {
+        if (maxConstant < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.maxConstant = maxConstant;
+    }
+
+    /**
+     * Returns the names of the variables 'define' creates.
+     */
+    public String[] getVariableNames() {
+        String[] names = new String[this.variables];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "v" + i;
+        }
+        return names;
+    }
+
+    /**
+     * Puts the generator's variables into 'variables'. The definitions depend only on
+     * the seed and the variable settings, not on how many expressions came before.
+     */
+    public void define(IDictionary<String, AstNode> variables) {
+        String[] names = this.getVariableNames();
+        AstNode[] definitions = this.definitions();
+        for (int i = 0; i < names.length; i++) {
+            variables.put(names[i], definitions[i]);
+        }
+    }
+
+    private AstNode[] definitions() {
+        Random definitionRandom = new Random(this.seed ^ 0x5DEECE66DL);
+        String[] names = this.getVariableNames();
+        AstNode[] definitions = new AstNode[names.length];
+        for (int i = 0; i < names.length; i++) {
+            AstNode constant = NumberNodes.of(1 + definitionRandom.nextInt(this.maxConstant));
+            if (i % this.chainLength == 0) {
+                definitions[i] = constant;
+            } else {
+                String operation = definitionRandom.nextBoolean() ? "+" : "-";
+                definitions[i] = new BinaryNode(operation, new AstNode(names[i - 1]), constant);
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Returns a new expression with 'size' operation nodes. At balance 0 it is a single
+     * chain with every operation on one path from the root. With sharing, an operand
+     * replaced by an earlier subtree may be bigger or smaller than the one it replaces,
+     * so the size is then only approximate.
+     */
+    public AstNode expression(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException();
+        }
+        // First lay the tree out in pre-order: for each node, the index of its operation
+        // in 'operations', or -1 for a leaf. A tree of 'size' operations has at most
+        // size + 1 leaves, so 2 * size + 1 entries always suffice.
+        int[] preorder = new int[2 * size + 1];
+        int length = 0;
+        int[] budgets = new int[2 * size + 1];
+        int pending = 0;
+        budgets[pending++] = size;
+        while (pending > 0) {
+            int budget = budgets[--pending];
+            if (budget == 0) {
+                preorder[length++] = -1;
+                continue;
+            }
+            int operation = this.pickOperation();
+            preorder[length++] = operation;
+            if (isUnary(this.operations[operation])) {
+                budgets[pending++] = budget - 1;
+            } else {
+                int left = this.splitLeft(budget - 1);
+                // Pushed right first so the left operand is laid out next.
+                budgets[pending++] = budget - 1 - left;
+                budgets[pending++] = left;
+            }
+        }
+
+        // Then build it bottom-up by walking the layout backwards: each operation's
+        // operands are the most recently built nodes, first operand on top.
+        String[] names = this.getVariableNames();
+        AstNode[] built = new AstNode[length];
+        int builtCount = 0;
+        Deque<AstNode> stack = new ArrayDeque<>();
+        for (int i = length - 1; i >= 0; i--) {
+            AstNode node;
+            if (preorder[i] < 0) {
+                node = this.leaf(names);
+            } else {
+                String operation = this.operations[preorder[i]];
+                AstNode first = this.operand(stack.pop(), built, builtCount);
+                if (isUnary(operation)) {
+                    node = new UnaryNode(operation, first);
+                } else {
+                    node = new BinaryNode(operation, first, this.operand(stack.pop(), built, builtCount));
+                }
+            }
+            built[builtCount++] = node;
+            stack.push(node);
+        }
+        return stack.pop();
+    }
+
+    // Returns 'planned', or with the sharing probability one of the first 'count'
+    // nodes in 'built' instead.
+    private AstNode operand(AstNode planned, AstNode[] built, int count) {
+        if (count > 0 && this.sharing > 0 && this.random.nextDouble() < this.sharing) {
+            return built[this.random.nextInt(count)];
+        }
+        return planned;
+    }
+
+    private int pickOperation() {
+        double total = this.cumulativeWeights[this.cumulativeWeights.length - 1];
+        double target = this.random.nextDouble() * total;
+        for (int i = 0; i < this.cumulativeWeights.length; i++) {
+            if (target < this.cumulativeWeights[i]) {
+                return i;
+            }
+        }
+        return this.cumulativeWeights.length - 1;
+    }
+
+    // How many of 'remaining' operation nodes go to the left operand.
+    private int splitLeft(int remaining) {
+        // The left share goes from half at balance 1 to all of it at balance 0.
+        double share = 0.5 + (1 - this.balance) * 0.5;
+        return (int) Math.round(share * remaining);
+    }
+
+    private AstNode leaf(String[] names) {
+        if (names.length > 0 && this.random.nextDouble() < this.variableLeaves) {
+            return new AstNode(names[this.random.nextInt(names.length)]);
+        }
+        return NumberNodes.of(1 + this.random.nextInt(this.maxConstant));
+    }
+
+    private static boolean isUnary(String operation) {
+        for (String unary : UNARY_OPERATIONS) {
+            if (unary.equals(operation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes a calculator script that defines this generator's variables and then
+     * evaluates 'expr' with 'command' (for example "toDouble" or "simplify").
+     *
+     * Every operation node that appears more than once in 'expr' is written once, as
+     * an assignment to a variable named shared0, shared1, ..., and referred to by name
+     * afterwards, so a DAG's script is proportional to its distinct nodes rather than
+     * to its expanded size.
+     */
+    public void writeScript(AstNode expr, String command, Appendable out) throws IOException {
+        String[] names = this.getVariableNames();
+        AstNode[] definitions = this.definitions();
+        Map<AstNode, String> sharedNames = new IdentityHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            out.append(names[i]).append(" := ");
+            writeInfix(definitions[i], sharedNames, out);
+            out.append('\n');
+        }
+
+        Map<AstNode, Integer> uses = countUses(expr);
+        // Post-order, so each shared subtree is assigned before anything using it.
+        Deque<AstNode> pending = new ArrayDeque<>();
+        Deque<Boolean> expanded = new ArrayDeque<>();
+        Map<AstNode, Boolean> visited = new IdentityHashMap<>();
+        pending.push(expr);
+        expanded.push(false);
+        while (!pending.isEmpty()) {
+            AstNode node = pending.pop();
+            boolean childrenDone = expanded.pop();
+            if (!node.isOperation()) {
+                continue;
+            }
+            if (childrenDone) {
+                if (uses.get(node) > 1 && node != expr) {
+                    String name = "shared" + sharedNames.size();
+                    out.append(name).append(" := ");
+                    writeInfix(node, sharedNames, out);
+                    out.append('\n');
+                    sharedNames.put(node, name);
+                }
+            } else if (visited.put(node, true) == null) {
+                pending.push(node);
+                expanded.push(true);
+                for (AstNode child : node.getChildren()) {
+                    pending.push(child);
+                    expanded.push(false);
+                }
+            }
+        }
+
+        out.append(command).append('(');
+        writeInfix(expr, sharedNames, out);
+        out.append(")\n");
+    }
+
+    private static Map<AstNode, Integer> countUses(AstNode root) {
+        Map<AstNode, Integer> uses = new IdentityHashMap<>();
+        Deque<AstNode> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            AstNode node = pending.pop();
+            Integer previous = uses.put(node, uses.getOrDefault(node, 0) + 1);
+            if (previous == null && node.isOperation()) {
+                for (AstNode child : node.getChildren()) {
+                    pending.push(child);
+                }
+            }
+        }
+        return uses;
+    }
+
+    // Writes 'node' fully parenthesized, using the names in 'sharedNames' for the
+    // subtrees that have one. Strings on the stack are written as-is.
+    private static void writeInfix(AstNode node, Map<AstNode, String> sharedNames,
+                                   Appendable out) throws IOException {
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item instanceof String) {
+                out.append((String) item);
+                continue;
+            }
+            AstNode current = (AstNode) item;
+            String shared = sharedNames.get(current);
+            if (shared != null) {
+                out.append(shared);
+            } else if (current.isNumber()) {
+                double value = current.getNumericValue();
+                out.append(value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value));
+            } else if (current.isVariable()) {
+                out.append(current.getName());
+            } else {
+                IList<AstNode> children = current.getChildren();
+                String name = current.getName();
+                if (children.size() == 1) {
+                    out.append(name.equals("negate") ? "-(" : name + "(");
+                    pending.push(")");
+                    pending.push(children.get(0));
+                } else {
+                    out.append('(');
+                    pending.push(")");
+                    pending.push(children.get(1));
+                    pending.push(" " + name + " ");
+                    pending.push(children.get(0));
+                }
+            }
+        }
+    }
+}
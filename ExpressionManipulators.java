@@ -3,10 +3,26 @@ package calculator.ast;
 import calculator.interpreter.Environment;
 
 import calculator.errors.EvaluationError;
-import datastructures.concrete.DoubleLinkedList;
+import calculator.gui.RasterImageDrawer;
+import datastructures.concrete.ChainedHashDictionary;
+import datastructures.concrete.DoubleArrayList;
+import datastructures.concrete.DynamicArrayList;
 import datastructures.interfaces.IDictionary;
 import datastructures.interfaces.IList;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
 /**
  * All of the static methods in this class are given the exact same parameters for
  * consistency. You can often ignore some of these parameters when implementing your
@@ -39,7 +55,9 @@ public class ExpressionManipulators {
     public static AstNode handleToDouble(Environment env, AstNode node) {
         // To help you get started, we've implemented this method for you.
         // You should fill in the TODOs in the 'toDoubleHelper' method.
-        return new AstNode(toDoubleHelper(env.getVariables(), node.getChildren().get(0)));
+        // toDoubleHelper reports undefined variables and unknown operations itself, so
+        // the tree is walked only once.
+        return NumberNodes.of(toDoubleHelper(env.getVariables(), operand(node, 0)));
     }
 
     private static double toDoubleHelper(IDictionary<String, AstNode> variables, AstNode node) {
@@ -47,44 +65,96 @@ public class ExpressionManipulators {
         if (node.isNumber()) {
             return node.getNumericValue();
         } else if (node.isVariable()) {
-            if (!variables.containsKey(node.getName())) {
+            AstNode definition = lookupVariable(variables, node.getName());
+            if (definition == null) {
                 throw new EvaluationError("Attempted to call an undefined variable");
             }
-            return toDoubleHelper(variables, variables.get(node.getName()));
+            return toDoubleHelper(variables, definition);
         } else if (node.isOperation()) {
             String name = node.getName();
             if (!operationsDefined(name)) {
                 throw new EvaluationError("Attempted to call an unknown operation");
             }
-            IList<AstNode> list = node.getChildren();
-            Double number = 0.0;
-            if (name.equals("+")) {
-                number = toDoubleHelper(variables, list.get(0)) + toDoubleHelper(variables, list.get(1));
-            } else if (name.equals("-")) {
-                number = toDoubleHelper(variables, list.get(0)) - toDoubleHelper(variables, list.get(1));
-            } else if (name.equals("*")) {
-                number = toDoubleHelper(variables, list.get(0)) * toDoubleHelper(variables, list.get(1));
-            } else if (name.equals("/")) {
-                number = toDoubleHelper(variables, list.get(0)) / toDoubleHelper(variables, list.get(1));    
-            } else if (name.equals("^")) {
-                number = Math.pow(toDoubleHelper(variables, list.get(0)), toDoubleHelper(variables, list.get(1)));
-            } else if (name.equals("negate")) {
-                number = -1 * toDoubleHelper(variables, list.get(0));
-            } else if (name.equals("sin")) {
-                number = Math.sin(toDoubleHelper(variables, list.get(0)));
-            } else if (name.equals("cos")) {
-                number = Math.cos(toDoubleHelper(variables, list.get(0)));
+            if (isBinaryOperation(name)) {
+                double left = toDoubleHelper(variables, operand(node, 0));
+                return applyOperation(name, left, toDoubleHelper(variables, operand(node, 1)));
+            } else if (isUnaryOperation(name)) {
+                return applyOperation(name, toDoubleHelper(variables, operand(node, 0)), 0);
             }
-            return number;
+            return 0.0;
         } else {
             throw new EvaluationError("Attempted to call a node of unknown type");
         }
     }
     
-    private static boolean operationsDefined(String name) {
+    // Returns the definition of 'name', or null if it is undefined. Dictionaries that
+    // support it are searched once instead of once for containsKey and again for get.
+    static AstNode lookupVariable(IDictionary<String, AstNode> variables, String name) {
+        if (variables instanceof ChainedHashDictionary) {
+            return ((ChainedHashDictionary<String, AstNode>) variables).getOrDefault(name, null);
+        }
+        return variables.containsKey(name) ? variables.get(name) : null;
+    }
+
+    // Returns operand 'index' of the operation 'node'. BinaryNode and UnaryNode
+    // operands are read straight from their fields; for other nodes, indices 0 and 1
+    // are at most one step into the children list.
+    static AstNode operand(AstNode node, int index) {
+        if (node instanceof BinaryNode) {
+            BinaryNode binary = (BinaryNode) node;
+            return index == 0 ? binary.getLeft() : binary.getRight();
+        } else if (node instanceof UnaryNode && index == 0) {
+            return ((UnaryNode) node).getOperand();
+        }
+        return node.getChildren().get(index);
+    }
+
+    // Returns how many operands the operation 'node' has.
+    static int operandCount(AstNode node) {
+        if (node instanceof BinaryNode) {
+            return 2;
+        } else if (node instanceof UnaryNode) {
+            return 1;
+        }
+        return node.getChildren().size();
+    }
+
+    // Applies an arithmetic operation to its already computed operands. Unary
+    // operations ignore 'right'; any other operation evaluates to 0.
+    private static double applyOperation(String name, double left, double right) {
+        if (name.equals("+")) {
+            return left + right;
+        } else if (name.equals("-")) {
+            return left - right;
+        } else if (name.equals("*")) {
+            return left * right;
+        } else if (name.equals("/")) {
+            return left / right;
+        } else if (name.equals("^")) {
+            return Math.pow(left, right);
+        } else if (name.equals("negate")) {
+            return -1 * left;
+        } else if (name.equals("sin")) {
+            return Math.sin(left);
+        } else if (name.equals("cos")) {
+            return Math.cos(left);
+        }
+        return 0.0;
+    }
+
+    private static boolean isBinaryOperation(String name) {
+        return (name.equals("+") || name.equals("-") || name.equals("*") || name.equals("/") || name.equals("^"));
+    }
+
+    private static boolean isUnaryOperation(String name) {
+        return (name.equals("negate") || name.equals("sin") || name.equals("cos"));
+    }
+    
+    static boolean operationsDefined(String name) {
         return (name.equals("+") || name.equals("-") || name.equals("*") || name.equals("/") || name.equals("^") ||
                 name.equals(":=") || name.equals("negate") || name.equals("sin") || name.equals("cos") ||
-                name.equals("simplify") || name.equals("toDouble") || name.equals("plot"));
+                name.equals("simplify") || name.equals("toDouble") || name.equals("plot") ||
+                name.equals("plotMany") || name.equals("plot2d") || name.equals("plotProgressive"));
     }
     /**
      * Accepts a 'simplify(inner)' AstNode and returns a new node containing the simplified version
@@ -120,9 +190,8 @@ public class ExpressionManipulators {
         if (!node.isOperation() || !node.getName().equals("simplify")) {
             throw new EvaluationError("Attempted to call 'handleSimplify()' on an AstNode whose name is not simplify");
         }
-        AstNode child = node.getChildren().get(0);
+        AstNode child = operand(node, 0);
         IDictionary<String, AstNode> variable = env.getVariables();
-        IList<AstNode> list = child.getChildren();     
         if (child.isNumber()) {
             return child;
         } else if (child.isVariable()) { // if the variable is defined
@@ -139,20 +208,16 @@ public class ExpressionManipulators {
                 throw new EvaluationError("operation not defined");
             }
             
-            if (list.size() == 2) {// simplify +,-,* with numbers on both sides, 3/4 simplify still 3/4
-                AstNode child1 = list.get(0);
-                AstNode child2 = list.get(1);
+            if (operandCount(child) == 2) {// simplify +,-,* with numbers on both sides, 3/4 simplify still 3/4
+                AstNode child1 = operand(child, 0);
+                AstNode child2 = operand(child, 1);
                 if ((child1.isOperation() && !operationsDefined(child1.getName())) ||
                         (child2.isOperation() && !operationsDefined(child2.getName()))) {
                     throw new EvaluationError("operation not defined");
                 }
                 
-                IList<AstNode> newChild1 = new DoubleLinkedList<>();
-                newChild1.add(child1);
-                AstNode node1 = new AstNode("simplify", newChild1);
-                IList<AstNode> newChild2 = new DoubleLinkedList<>();
-                newChild2.add(child2);
-                AstNode node2 = new AstNode("simplify", newChild2);
+                AstNode node1 = new UnaryNode("simplify", child1);
+                AstNode node2 = new UnaryNode("simplify", child2);
                 
 //                if ((child1.isVariable() && !variable.containsKey(child1.getName())) ||
 //                        (child2.isVariable() && !variable.containsKey(child2.getName()))
@@ -175,13 +240,11 @@ public class ExpressionManipulators {
                             handleSimplify(env, node2));
                 }
             } else { // if sin,cos,leave it as it is
-                AstNode child1 = list.get(0);
+                AstNode child1 = operand(child, 0);
                 if (child1.isOperation() && !operationsDefined(child1.getName())) {
                     throw new EvaluationError("operation not defined");
                 }
-                IList<AstNode> newChild1 = new DoubleLinkedList<>();
-                newChild1.add(child1);
-                AstNode node1 = new AstNode("simplify", newChild1);      
+                AstNode node1 = new UnaryNode("simplify", child1);
                 
                 // added, according to test, sin42 should be simplified to sin42
                 if(name.equals("sin") || name.equals("cos")) {
@@ -205,6 +268,53 @@ public class ExpressionManipulators {
         }
     }
     
+    // Upper bound on the number of points an adaptive plot may add to its coarse grid.
+    private static final int ADAPTIVE_MAX_POINTS = 10000;
+    // How many times a single coarse interval may be halved in adaptive mode.
+    private static final int ADAPTIVE_MAX_DEPTH = 16;
+    // Fraction of a step by which max may fall short of the last grid point and
+    // still count as reaching it, e.g. 0.3 / 0.1 == 2.9999999999999996.
+    private static final double SWEEP_EPSILON = 1e-9;
+    // Largest number of grid points a single sweep may have (array size limit).
+    private static final int SWEEP_MAX_POINTS = Integer.MAX_VALUE - 8;
+    // Number of points handed to a SampleSink at a time when streaming a sweep.
+    private static final int PLOT_CHUNK_SIZE = 4096;
+    // Spacing, in grid points, of the first coarse pass of plotProgressive. Must be a power of two.
+    private static final int PROGRESSIVE_FIRST_STRIDE = 64;
+    // Largest sweep plotProgressive accepts. It keeps every point between passes, so
+    // this bounds its memory to two double arrays of this length (64 MB).
+    private static final int PROGRESSIVE_MAX_POINTS = 1 << 22;
+    // Horizontal resolution plots are reduced to before drawing. Plotting more
+    // points than the image has pixel columns adds cost without changing the picture.
+    private static final int PLOT_DRAW_WIDTH = 2048;
+
+    /**
+     * How 'plot' thins out its points before handing them to the image drawer.
+     */
+    public enum Decimation {
+        /** Draw every sampled point. */
+        NONE,
+        /** Keep the lowest and highest point in each pixel column. */
+        MIN_MAX,
+        /** Keep about two points per pixel column chosen by Largest-Triangle-Three-Buckets. */
+        LTTB
+    }
+
+    // Side length of the square blocks of cells plot2d hands to each worker thread.
+    private static final int PLOT2D_TILE = 64;
+
+    // Upper bound on the memory the samples kept by the plot cache may use.
+    private static final long PLOT_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final PlotCache plotCache = new PlotCache(PLOT_CACHE_BYTES);
+
+    /**
+     * Returns the cache 'plot' keeps its samples in, e.g. to read its hit/miss
+     * counts or to clear it.
+     */
+    public static PlotCache getPlotCache() {
+        return plotCache;
+    }
+
     /**
      * Accepts a 'plot(exprToPlot, var, varMin, varMax, step)' AstNode and
      * generates the corresponding plot. Returns some arbitrary AstNode.
@@ -234,10 +344,22 @@ public class ExpressionManipulators {
      *
      * ---
      *
+     * Adaptive mode: an optional sixth argument gives a tolerance.
+     *
+     * >>> plot(sin(x), x, 0, 100, 1, 0.01)
+     *
+     * Here 'step' is only the starting (coarse) spacing. Every interval whose
+     * midpoint is further than 'tolerance' away from the straight line between
+     * its endpoints is halved again, so flat regions keep few points and steep
+     * ones get more. Every point of the coarse grid is always plotted; at most
+     * ADAPTIVE_MAX_POINTS points are added between them, always splitting the
+     * interval whose midpoint is furthest off its chord next.
+     *
      * @throws EvaluationError  if any of the expressions contains an undefined variable.
      * @throws EvaluationError  if varMin > varMax
      * @throws EvaluationError  if 'var' was already defined
      * @throws EvaluationError  if 'step' is zero or negative
+     * @throws EvaluationError  if 'tolerance' is given and is zero or negative
      */
 
     
@@ -253,6 +375,15 @@ public class ExpressionManipulators {
     }
     
     public static AstNode plot(Environment env, AstNode node) {
+        return plot(env, node, null, Decimation.MIN_MAX);
+    }
+
+    /**
+     * Same as 'plot(env, node)', but draws with 'drawer' (which renders straight to
+     * a PNG file and needs no display), or with the environment's image drawer if
+     * 'drawer' is null, and thins out the points with 'decimation' instead of MIN_MAX.
+     */
+    public static AstNode plot(Environment env, AstNode node, RasterImageDrawer drawer, Decimation decimation) {
         // TODO: Your code here
         
         // Note: every single function we add MUST return an
@@ -269,12 +400,372 @@ public class ExpressionManipulators {
         
         
         IDictionary<String, AstNode> variables = env.getVariables();
-        IList<AstNode> child = node.getChildren(); //0:expr, 1: var, 2:min, 3:max,4:gap
-        AstNode function = child.get(0);
-        AstNode var = child.get(1);
-        AstNode min = child.get(2);
-        AstNode max = child.get(3);
-        AstNode step = child.get(4);
+        AstNode[] child = arguments(node); //0:expr, 1: var, 2:min, 3:max,4:gap
+        AstNode function = child[0];
+        AstNode var = child[1];
+        double[] range = plotRange(variables, var, child[2], child[3], child[4]);
+        checkDefined(variables, var.getName(), function);
+        double tolerance = 0;
+        if (child.length > 5) {
+            tolerance = getNum(variables, child[5]);
+            if (tolerance <= 0) {
+                throw new EvaluationError("tolerance must be positive");
+            }
+        }
+        
+        String key = plotCacheKey(variables, function, var.getName(), range, tolerance);
+        DoubleArrayList xValues = new DoubleArrayList();
+        DoubleArrayList yValues = new DoubleArrayList();
+        SampleSink decimator = new DecimatingSink(xValues, yValues, range[0], range[1], decimation);
+        double[][] cached = plotCache.get(key);
+        if (cached != null) {
+            decimator.accept(cached[0], cached[1], cached[0].length);
+            decimator.finish();
+        } else if (tolerance > 0) {
+            DoubleArrayList adaptiveX = new DoubleArrayList();
+            DoubleArrayList adaptiveY = new DoubleArrayList();
+            adaptiveSweep(new Sweep(variables, function, var.getName()), range[0], range[1], range[2],
+                    tolerance, adaptiveX, adaptiveY);
+            double[] xs = adaptiveX.toArray();
+            double[] ys = adaptiveY.toArray();
+            plotCache.put(key, xs, ys);
+            decimator.accept(xs, ys, xs.length);
+            decimator.finish();
+        } else {
+            int count = sampleCount(range[0], range[1], range[2]);
+            SampleSink sink = decimator;
+            if (plotCache.fits(count)) {
+                sink = new CachingSink(decimator, key, count);
+            }
+            streamSweep(new Sweep(variables, function, var.getName()), range[0], range[1], range[2], sink);
+        }
+        drawScatterPlot(env, drawer, var.getName(), xValues, yValues);
+        return NumberNodes.of(1);
+    }
+
+    // Draws with 'drawer', or with the environment's image drawer if it is null.
+    private static void drawScatterPlot(Environment env, RasterImageDrawer drawer, String varName,
+                                        DoubleArrayList xValues, DoubleArrayList yValues) {
+        if (drawer != null) {
+            drawer.drawScatterPlot(xValues.toArray(), yValues.toArray(), xValues.size());
+        } else {
+            env.getImageDrawer().drawScatterPlot("plot", varName, "output", xValues.asList(), yValues.asList());
+        }
+    }
+
+    /**
+     * Takes the same 'plot(exprToPlot, var, varMin, varMax, step)' AstNode as 'plot',
+     * but draws the plot several times with increasing detail: first every 64th
+     * point of the sweep, then every 32nd, and so on down to every point. Each pass
+     * only evaluates the points the earlier passes skipped, so the total work is the
+     * same as for 'plot', and the last drawing is identical to what 'plot' draws.
+     *
+     * @throws EvaluationError  in the same cases as 'plot'
+     * @throws EvaluationError  if the sweep has more than PROGRESSIVE_MAX_POINTS points
+     */
+    public static AstNode plotProgressive(Environment env, AstNode node) {
+        return plotProgressive(env, node, null, Decimation.MIN_MAX);
+    }
+
+    /**
+     * Same as 'plotProgressive(env, node)', but draws and thins out the points as
+     * 'plot(env, node, drawer, decimation)' does.
+     */
+    public static AstNode plotProgressive(Environment env, AstNode node, RasterImageDrawer drawer,
+                                          Decimation decimation) {
+        IDictionary<String, AstNode> variables = env.getVariables();
+        AstNode[] child = arguments(node);
+        AstNode function = child[0];
+        String varName = child[1].getName();
+        double[] range = plotRange(variables, child[1], child[2], child[3], child[4]);
+        checkDefined(variables, varName, function);
+        Sweep sweep = new Sweep(variables, function, varName);
+
+        int count = sampleCount(range[0], range[1], range[2]);
+        if (count > PROGRESSIVE_MAX_POINTS) {
+            throw new EvaluationError("too many points to plot progressively");
+        }
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int stride = PROGRESSIVE_FIRST_STRIDE; stride >= 1; stride /= 2) {
+            // The first pass fills every multiple of 'stride'; later passes only the
+            // odd multiples, since the even ones were filled by the pass before.
+            int first = stride == PROGRESSIVE_FIRST_STRIDE ? 0 : stride;
+            int skip = stride == PROGRESSIVE_FIRST_STRIDE ? stride : 2 * stride;
+            for (int k = first; k < count; k += skip) {
+                xs[k] = sampleAt(range[0], range[1], range[2], k);
+                ys[k] = sweep.at(xs[k]);
+            }
+
+            DoubleArrayList xValues = new DoubleArrayList();
+            DoubleArrayList yValues = new DoubleArrayList();
+            SampleSink sink = new DecimatingSink(xValues, yValues, range[0], range[1], decimation);
+            double[] pointX = new double[1];
+            double[] pointY = new double[1];
+            for (int k = 0; k < count; k += stride) {
+                pointX[0] = xs[k];
+                pointY[0] = ys[k];
+                sink.accept(pointX, pointY, 1);
+            }
+            sink.finish();
+            drawScatterPlot(env, drawer, varName, xValues, yValues);
+        }
+        return NumberNodes.of(1);
+    }
+
+    /**
+     * Accepts a 'plotMany(var, varMin, varMax, step, expr1, expr2, ...)' AstNode and
+     * plots every expression against the same values of 'var' in one picture.
+     *
+     * All the expressions are compiled together into one program and evaluated in
+     * a single pass over the x values. Subexpressions that appear more than once
+     * (within or across the expressions, including through variable definitions)
+     * are only computed once per x.
+     *
+     * >>> plotMany(x, 0, 10, 0.1, sin(x) * 2, sin(x) * 3)
+     *
+     * @throws EvaluationError  in the same cases as 'plot'
+     * @throws EvaluationError  if no expression is given
+     */
+    public static AstNode plotMany(Environment env, AstNode node) {
+        return plotMany(env, node, null, Decimation.MIN_MAX);
+    }
+
+    /**
+     * Same as 'plotMany(env, node)', but draws and thins out the points as
+     * 'plot(env, node, drawer, decimation)' does.
+     */
+    public static AstNode plotMany(Environment env, AstNode node, RasterImageDrawer drawer,
+                                   Decimation decimation) {
+        IDictionary<String, AstNode> variables = env.getVariables();
+        DynamicArrayList<AstNode> child = new DynamicArrayList<>(node.getChildren().size());
+        child.addAll(node.getChildren()); //0: var, 1:min, 2:max, 3:gap, 4...: exprs
+        if (child.size() < 5) {
+            throw new EvaluationError("plotMany needs at least one expression");
+        }
+        AstNode var = child.get(0);
+        double[] range = plotRange(variables, var, child.get(1), child.get(2), child.get(3));
+        IList<AstNode> functions = child.subList(4, child.size());
+        for (AstNode function : functions) {
+            checkDefined(variables, var.getName(), function);
+        }
+
+        DoubleArrayList xValues = new DoubleArrayList();
+        DoubleArrayList yValues = new DoubleArrayList();
+        SampleSink[] sinks = new SampleSink[functions.size()];
+        for (int i = 0; i < sinks.length; i++) {
+            sinks[i] = new DecimatingSink(xValues, yValues, range[0], range[1], decimation);
+        }
+        SharedEvaluator evaluator = new SharedEvaluator(variables, var.getName(), functions);
+        int count = sampleCount(range[0], range[1], range[2]);
+        int chunk = Math.min(count, PLOT_CHUNK_SIZE);
+        double[] xs = new double[chunk];
+        double[][] ys = new double[sinks.length][chunk];
+        for (int from = 0; from < count; from += chunk) {
+            int to = Math.min(count, from + chunk);
+            for (int k = from; k < to; k++) {
+                xs[k - from] = sampleAt(range[0], range[1], range[2], k);
+                evaluator.evaluate(xs[k - from]);
+                for (int i = 0; i < sinks.length; i++) {
+                    ys[i][k - from] = evaluator.valueOf(i);
+                }
+            }
+            for (int i = 0; i < sinks.length; i++) {
+                sinks[i].accept(xs, ys[i], to - from);
+            }
+        }
+        for (SampleSink sink : sinks) {
+            sink.finish();
+        }
+        drawScatterPlot(env, drawer, var.getName(), xValues, yValues);
+        return NumberNodes.of(1);
+    }
+
+    // Several expressions compiled into one program over their distinct
+    // subexpressions, with variables other than the plotted one replaced by their
+    // definitions. Each distinct subexpression gets a slot, numbered after the slots
+    // of its operands and keyed by its opcode and those operands' slots, so
+    // compiling takes time linear in the size of the expressions. Evaluating at a
+    // point computes every slot once, in order, so a subexpression shared within or
+    // across the expressions is only computed once per point.
+    private static class SharedEvaluator {
+        private final IDictionary<String, AstNode> variables;
+        private final String varName;
+        private final HashMap<String, Integer> slotOfKey = new HashMap<>();
+        private final IdentityHashMap<AstNode, Integer> slotOfNode = new IdentityHashMap<>();
+        // For each slot: its CompiledExpression opcode and the slots of its operands.
+        private int[] opcodes = new int[16];
+        private int[] lefts = new int[16];
+        private int[] rights = new int[16];
+        // CONST slots hold their value from the start; the rest are filled by 'evaluate'.
+        private double[] values = new double[16];
+        private int size = 0;
+        private final int[] roots;
+
+        SharedEvaluator(IDictionary<String, AstNode> variables, String varName, IList<AstNode> functions) {
+            this.variables = variables;
+            this.varName = varName;
+            this.roots = new int[functions.size()];
+            int i = 0;
+            for (AstNode function : functions) {
+                roots[i] = slotOf(function);
+                i++;
+            }
+        }
+
+        // Computes every slot with the plotted variable equal to 'x'.
+        void evaluate(double x) {
+            for (int slot = 0; slot < size; slot++) {
+                int opcode = opcodes[slot];
+                if (opcode == CompiledExpression.LOAD) {
+                    values[slot] = x;
+                } else if (opcode != CompiledExpression.CONST) {
+                    values[slot] = CompiledExpression.apply(opcode, values[lefts[slot]], values[rights[slot]]);
+                }
+            }
+        }
+
+        // Returns the value of expression 'index' at the last point passed to 'evaluate'.
+        double valueOf(int index) {
+            return values[roots[index]];
+        }
+
+        private int slotOf(AstNode node) {
+            if (node.isNumber()) {
+                return constant(node.getNumericValue());
+            } else if (node.isVariable()) {
+                if (node.getName().equals(varName)) {
+                    return intern("x", CompiledExpression.LOAD, 0, 0, 0.0);
+                }
+                AstNode definition = lookupVariable(variables, node.getName());
+                if (definition == null) {
+                    throw new EvaluationError("expression contains an undefined variable");
+                }
+                return slotOf(definition);
+            }
+            Integer known = slotOfNode.get(node);
+            if (known != null) {
+                return known;
+            }
+            String name = node.getName();
+            int opcode = CompiledExpression.opcodeOf(name);
+            int slot;
+            if (opcode < 0) {
+                if (!operationsDefined(name)) {
+                    throw new EvaluationError("Attempted to call an unknown operation");
+                }
+                // Defined but non-arithmetic operations evaluate to 0, as in toDouble.
+                slot = constant(0.0);
+            } else {
+                int left = slotOf(operand(node, 0));
+                int right = CompiledExpression.isBinary(opcode) ? slotOf(operand(node, 1)) : left;
+                if (opcodes[left] == CompiledExpression.CONST && opcodes[right] == CompiledExpression.CONST) {
+                    slot = constant(CompiledExpression.apply(opcode, values[left], values[right]));
+                } else {
+                    slot = intern(opcode + ":" + left + ":" + right, opcode, left, right, 0.0);
+                }
+            }
+            slotOfNode.put(node, slot);
+            return slot;
+        }
+
+        private int constant(double value) {
+            return intern("c" + Double.doubleToLongBits(value), CompiledExpression.CONST, 0, 0, value);
+        }
+
+        // Returns the slot for 'key', adding it at the end if there is none yet.
+        private int intern(String key, int opcode, int left, int right, double value) {
+            Integer slot = slotOfKey.get(key);
+            if (slot != null) {
+                return slot;
+            }
+            if (size == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, 2 * size);
+                lefts = Arrays.copyOf(lefts, 2 * size);
+                rights = Arrays.copyOf(rights, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            opcodes[size] = opcode;
+            lefts[size] = left;
+            rights[size] = right;
+            values[size] = value;
+            slotOfKey.put(key, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Same as 'plot', but instead of drawing, hands the points to 'sink' in chunks of
+     * PLOT_CHUNK_SIZE as they are computed. Memory use does not depend on how many
+     * points the sweep has. The adaptive 'tolerance' argument is not supported here.
+     *
+     * @throws EvaluationError  in the same cases as 'plot'
+     */
+    public static AstNode plotStreaming(Environment env, AstNode node, SampleSink sink) {
+        IDictionary<String, AstNode> variables = env.getVariables();
+        AstNode[] child = arguments(node);
+        String varName = child[1].getName();
+        double[] range = plotRange(variables, child[1], child[2], child[3], child[4]);
+        checkDefined(variables, varName, child[0]);
+        streamSweep(new Sweep(variables, child[0], varName), range[0], range[1], range[2], sink);
+        return NumberNodes.of(1);
+    }
+
+    /**
+     * Takes the same 'plot(exprToPlot, var, varMin, varMax, step)' AstNode as 'plot',
+     * but instead of drawing, writes every (x, y) point to 'file' in the SweepFile
+     * format, chunk by chunk through memory-mapped windows. Use SweepFile.open to
+     * read the points back.
+     *
+     * @throws EvaluationError  in the same cases as 'plot'
+     * @throws EvaluationError  if the file cannot be written
+     */
+    public static AstNode exportSweep(Environment env, AstNode node, Path file) {
+        IDictionary<String, AstNode> variables = env.getVariables();
+        AstNode[] child = arguments(node);
+        String varName = child[1].getName();
+        double[] range = plotRange(variables, child[1], child[2], child[3], child[4]);
+        checkDefined(variables, varName, child[0]);
+        // Compiling also checks the variables reached through definitions, so do it
+        // before the file exists.
+        Sweep sweep = new Sweep(variables, child[0], varName);
+        SweepFile.Writer writer;
+        try {
+            writer = SweepFile.create(file, sampleCount(range[0], range[1], range[2]));
+        } catch (IOException e) {
+            throw new EvaluationError("could not write " + file);
+        }
+        try {
+            streamSweep(sweep, range[0], range[1], range[2], writer);
+        } catch (RuntimeException | Error e) {
+            // Don't leave behind a file whose header promises points it does not have.
+            try {
+                writer.close();
+                Files.deleteIfExists(file);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        return NumberNodes.of(1);
+    }
+
+    // The children of 'node' as an array, so the plot methods can pick arguments
+    // by position without get(i) walking the linked list each time.
+    private static AstNode[] arguments(AstNode node) {
+        IList<AstNode> children = node.getChildren();
+        AstNode[] result = new AstNode[children.size()];
+        int i = 0;
+        for (AstNode child : children) {
+            result[i] = child;
+            i++;
+        }
+        return result;
+    }
+
+    // Checks the range arguments of a plot node and returns {min, max, step}.
+    private static double[] plotRange(IDictionary<String, AstNode> variables, AstNode var,
+                                      AstNode min, AstNode max, AstNode step) {
         Double min_num = getNum(variables, min);
         Double max_num = getNum(variables, max);
         Double step_num = getNum(variables, step);
@@ -289,46 +780,390 @@ public class ExpressionManipulators {
         if (step_num <= 0) {
             throw new EvaluationError("step must be positive");
         }
-        variables.put(var.getName(), new AstNode(1));
-        
-        if (!ifAllDefined(variables, function)) { 
+        return new double[] {min_num, max_num, step_num};
+    }
+
+    // Checks that every variable in 'function' other than 'varName' is defined.
+    private static void checkDefined(IDictionary<String, AstNode> variables, String varName, AstNode function) {
+        FreeVariables free = FreeVariables.of(function);
+        if (free.hasUnknownOperation()) {
+            throw new EvaluationError("Attempted to call an unknown operation");
+        }
+        if (!free.allDefined(variables, varName)) {
             throw new EvaluationError("expression contains an undefined variable");
         }
-        variables.remove(var.getName());
-        
-        
-        IList<Double> xValues = new DoubleLinkedList<>();
-        IList<Double> yValues = new DoubleLinkedList<>();
-        // edited
-        
+    }
 
-        for(double i = min_num; i <= max_num; i += step_num) {
-            xValues.add(i);
-            variables.put(var.getName(), new AstNode(i));
-            yValues.add(toDoubleHelper(variables, function));             
+    // Evaluates the whole grid PLOT_CHUNK_SIZE points at a time, reusing one pair of arrays.
+    private static void streamSweep(Sweep sweep, double min, double max, double step, SampleSink sink) {
+        int count = sampleCount(min, max, step);
+        int chunk = Math.min(count, PLOT_CHUNK_SIZE);
+        double[] xs = new double[chunk];
+        double[] ys = new double[chunk];
+        for (int from = 0; from < count; from += chunk) {
+            int to = Math.min(count, from + chunk);
+            sweepRange(sweep, min, max, step, from, to, xs, ys);
+            sink.accept(xs, ys, to - from);
         }
-        
-        env.getImageDrawer().drawScatterPlot("plot", var.getName(), "output", xValues, yValues);
-        variables.remove(var.getName());
-        return new AstNode(1);
+        sink.finish();
     }
-    
-    private static boolean ifAllDefined(IDictionary<String, AstNode> variables, AstNode node) {
-        Boolean bool = true;
-        if (node.getChildren() == null || node.getChildren().size() == 0) {
-            if ((node.isOperation() && !operationsDefined(node.getName())) ||
-                (node.isVariable() && !variables.containsKey(node.getName()))) {
-                bool = false;
+
+    /**
+     * Accepts a 'plot2d(expr, x, xMin, xMax, xStep, y, yMin, yMax, yStep)' AstNode,
+     * evaluates 'expr' at every point of the grid of x and y values and renders the
+     * result as a heatmap (blue for the lowest value, red for the highest, black where
+     * the value is not a number). One grid cell becomes one pixel.
+     *
+     * The image drawer only knows how to draw scatter plots, so the heatmap is
+     * written to the PNG file 'file' instead.
+     *
+     * The grid is evaluated in square tiles on all available processors, using a
+     * compiled form of 'expr' so no variables are looked up or bound per cell.
+     *
+     * >>> plot2d(sin(x) * cos(y), x, -3, 3, 0.01, y, -3, 3, 0.01)
+     *
+     * @throws EvaluationError  in the same cases as 'plot', for either variable
+     * @throws EvaluationError  if there are not exactly 9 arguments
+     * @throws EvaluationError  if 'x' and 'y' are the same variable
+     * @throws EvaluationError  if the file cannot be written
+     */
+    public static AstNode plot2d(Environment env, AstNode node, Path file) {
+        IDictionary<String, AstNode> variables = env.getVariables();
+        AstNode[] child = arguments(node); //0:expr, 1-4: x range, 5-8: y range
+        if (child.length != 9) {
+            throw new EvaluationError("plot2d needs 9 arguments");
+        }
+        AstNode function = child[0];
+        AstNode xVar = child[1];
+        AstNode yVar = child[5];
+        if (xVar.getName().equals(yVar.getName())) {
+            throw new EvaluationError("plot2d needs two different variables");
+        }
+        double[] xRange = plotRange(variables, xVar, child[2], child[3], child[4]);
+        double[] yRange = plotRange(variables, yVar, child[6], child[7], child[8]);
+        CompiledExpression program = CompiledExpression.compile(variables, function,
+                xVar.getName(), yVar.getName());
+        int columns = sampleCount(xRange[0], xRange[1], xRange[2]);
+        int rows = sampleCount(yRange[0], yRange[1], yRange[2]);
+        if ((long) columns * rows > SWEEP_MAX_POINTS) {
+            throw new EvaluationError("too many points to plot");
+        }
+        double[] grid = sampleGrid(program, xRange, yRange, columns, rows);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            RasterImageDrawer.writePng(heatmap(grid, columns, rows), columns, rows, out);
+        } catch (IOException e) {
+            throw new EvaluationError("could not write " + file);
+        }
+        return NumberNodes.of(1);
+    }
+
+    // Evaluates 'program' (slot 0 is x, slot 1 is y) over the grid. Cell (column, row)
+    // ends up at grid[row * columns + column].
+    private static double[] sampleGrid(CompiledExpression program, double[] xRange, double[] yRange,
+                                       int columns, int rows) {
+        double[] grid = new double[columns * rows];
+        int tileColumns = (columns + PLOT2D_TILE - 1) / PLOT2D_TILE;
+        int tileRows = (rows + PLOT2D_TILE - 1) / PLOT2D_TILE;
+        IntStream.range(0, tileColumns * tileRows).parallel().forEach(tile -> {
+            int firstColumn = (tile % tileColumns) * PLOT2D_TILE;
+            int firstRow = (tile / tileColumns) * PLOT2D_TILE;
+            int lastColumn = Math.min(columns, firstColumn + PLOT2D_TILE);
+            int lastRow = Math.min(rows, firstRow + PLOT2D_TILE);
+            double[] slots = new double[2];
+            double[] stack = program.newStack();
+            for (int row = firstRow; row < lastRow; row++) {
+                slots[1] = sampleAt(yRange[0], yRange[1], yRange[2], row);
+                for (int column = firstColumn; column < lastColumn; column++) {
+                    slots[0] = sampleAt(xRange[0], xRange[1], xRange[2], column);
+                    grid[row * columns + column] = program.evaluate(slots, stack);
+                }
+            }
+        });
+        return grid;
+    }
+
+    // Colors each cell between blue (lowest finite value) and red (highest), with
+    // y increasing upwards. Returns 0xRRGGBB pixels row by row from the top.
+    private static int[] heatmap(double[] grid, int columns, int rows) {
+        double low = Double.POSITIVE_INFINITY;
+        double high = Double.NEGATIVE_INFINITY;
+        for (double value : grid) {
+            if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                low = Math.min(low, value);
+                high = Math.max(high, value);
+            }
+        }
+        double span = high > low ? high - low : 1;
+        int[] pixels = new int[columns * rows];
+        for (int row = 0; row < rows; row++) {
+            int line = (rows - 1 - row) * columns;
+            for (int column = 0; column < columns; column++) {
+                double value = grid[row * columns + column];
+                int color = 0;
+                if (!Double.isNaN(value)) {
+                    double t = Math.max(0, Math.min(1, (value - low) / span));
+                    int red = (int) (255 * t);
+                    color |= (red << 16) | (255 - red);
+                }
+                pixels[line + column] = color;
+            }
+        }
+        return pixels;
+    }
+
+    // Everything the samples of a plot depend on: the range, the tolerance and the
+    // expression with every defined variable replaced by its definition, so that
+    // redefining a variable the expression uses also changes the key.
+    private static String plotCacheKey(IDictionary<String, AstNode> variables, AstNode function,
+                                       String varName, double[] range, double tolerance) {
+        StringBuilder key = new StringBuilder();
+        key.append(varName).append('|').append(range[0]).append('|').append(range[1])
+                .append('|').append(range[2]).append('|').append(tolerance).append('|');
+        appendStructure(variables, function, varName, key);
+        return key.toString();
+    }
+
+    private static void appendStructure(IDictionary<String, AstNode> variables, AstNode node,
+                                        String varName, StringBuilder key) {
+        if (node.isNumber()) {
+            key.append(node.getNumericValue());
+        } else if (node.isVariable()) {
+            AstNode definition = node.getName().equals(varName) ? null : lookupVariable(variables, node.getName());
+            if (definition == null) {
+                key.append('$').append(node.getName());
+            } else {
+                key.append('{');
+                appendStructure(variables, definition, varName, key);
+                key.append('}');
             }
         } else {
-            IList<AstNode> list = node.getChildren();
-            int size = list.size();
-            int count = 0;
-            while (bool && count < size) {
-                bool = ifAllDefined(variables, list.get(count));
-                count++;
+            key.append(node.getName()).append('(');
+            for (AstNode child : node.getChildren()) {
+                appendStructure(variables, child, varName, key);
+                key.append(',');
+            }
+            key.append(')');
+        }
+    }
+
+    // Passes every chunk on to 'next' and also keeps a copy of the whole sweep,
+    // which is stored in the plot cache once the sweep is complete.
+    private static class CachingSink implements SampleSink {
+        private final SampleSink next;
+        private final String key;
+        private final double[] xs;
+        private final double[] ys;
+        private int filled = 0;
+
+        CachingSink(SampleSink next, String key, int count) {
+            this.next = next;
+            this.key = key;
+            this.xs = new double[count];
+            this.ys = new double[count];
+        }
+
+        @Override
+        public void accept(double[] xValues, double[] yValues, int count) {
+            System.arraycopy(xValues, 0, xs, filled, count);
+            System.arraycopy(yValues, 0, ys, filled, count);
+            filled += count;
+            next.accept(xValues, yValues, count);
+        }
+
+        @Override
+        public void finish() {
+            plotCache.put(key, xs, ys);
+            next.finish();
+        }
+    }
+
+    // Appends the points, thinned out according to 'mode', to the given lists.
+    // They are complete once 'finish' has been called.
+    private static class DecimatingSink implements SampleSink {
+        private final Decimation mode;
+        private final DoubleArrayList xValues;
+        private final DoubleArrayList yValues;
+        private final Decimator.MinMaxBuckets buckets;
+        // LTTB needs the whole series at once, so it buffers every point.
+        private double[] bufferX = new double[0];
+        private double[] bufferY = new double[0];
+        private int buffered = 0;
+
+        DecimatingSink(DoubleArrayList xValues, DoubleArrayList yValues, double minX, double maxX,
+                       Decimation mode) {
+            this.mode = mode;
+            this.xValues = xValues;
+            this.yValues = yValues;
+            this.buckets = new Decimator.MinMaxBuckets(minX, maxX, PLOT_DRAW_WIDTH);
+        }
+
+        @Override
+        public void accept(double[] xs, double[] ys, int count) {
+            if (mode == Decimation.MIN_MAX) {
+                for (int i = 0; i < count; i++) {
+                    buckets.add(xs[i], ys[i]);
+                }
+            } else if (mode == Decimation.LTTB) {
+                if (buffered + count > bufferX.length) {
+                    int capacity = Math.max(buffered + count, 2 * bufferX.length);
+                    bufferX = Arrays.copyOf(bufferX, capacity);
+                    bufferY = Arrays.copyOf(bufferY, capacity);
+                }
+                System.arraycopy(xs, 0, bufferX, buffered, count);
+                System.arraycopy(ys, 0, bufferY, buffered, count);
+                buffered += count;
+            } else {
+                addAll(xs, ys, count);
+            }
+        }
+
+        @Override
+        public void finish() {
+            if (mode == Decimation.MIN_MAX) {
+                addAll(buckets.getX(), buckets.getY(), buckets.finish());
+            } else if (mode == Decimation.LTTB) {
+                int threshold = 2 * PLOT_DRAW_WIDTH;
+                double[] outX = new double[threshold];
+                double[] outY = new double[threshold];
+                addAll(outX, outY, Decimator.lttb(bufferX, bufferY, buffered, threshold, outX, outY));
             }
         }
-        return bool;
+
+        private void addAll(double[] xs, double[] ys, int count) {
+            xValues.addAll(xs, count);
+            yValues.addAll(ys, count);
+        }
+    }
+
+    // Number of grid points min, min + step, ..., up to and including max.
+    private static int sampleCount(double min, double max, double step) {
+        double intervals = Math.floor((max - min) / step + SWEEP_EPSILON);
+        if (intervals >= SWEEP_MAX_POINTS) {
+            throw new EvaluationError("too many points to plot");
+        }
+        return (int) intervals + 1;
+    }
+
+    // The k-th grid point. Computed from k directly (rather than by repeatedly
+    // adding step) so that rounding error does not build up along the sweep.
+    private static double sampleAt(double min, double max, double step, int k) {
+        return Math.min(min + k * step, max);
+    }
+
+    // Evaluates grid points [from, to) into xs and ys, point k going to index
+    // k - from, so disjoint index ranges of one sweep can be filled independently.
+    private static void sweepRange(Sweep sweep, double min, double max, double step,
+                                   int from, int to, double[] xs, double[] ys) {
+        for (int k = from; k < to; k++) {
+            xs[k - from] = sampleAt(min, max, step, k);
+            ys[k - from] = sweep.at(xs[k - from]);
+        }
+    }
+
+    // An expression compiled with the sweep variable in slot 0, so evaluating it at
+    // a point is one array store plus the program, with no variable bound or looked
+    // up by name. Holds its own scratch stack, so each thread needs its own Sweep.
+    private static class Sweep {
+        private final CompiledExpression program;
+        private final double[] slots = new double[1];
+        private final double[] stack;
+
+        Sweep(IDictionary<String, AstNode> variables, AstNode function, String varName) {
+            this.program = CompiledExpression.compile(variables, function, varName);
+            this.stack = program.newStack();
+        }
+
+        double at(double x) {
+            slots[0] = x;
+            return program.evaluate(slots, stack);
+        }
+    }
+
+    // Samples every point of the coarse grid, then spends the ADAPTIVE_MAX_POINTS
+    // refinement points on whichever intervals are currently furthest off their
+    // chords, so where they go does not depend on where in the range an interval is.
+    // The output points are sorted by x.
+    private static void adaptiveSweep(Sweep sweep, double min, double max, double step,
+                                      double tolerance, DoubleArrayList xValues, DoubleArrayList yValues) {
+        int count = sampleCount(min, max, step);
+        DoubleArrayList coarseX = new DoubleArrayList(count);
+        DoubleArrayList coarseY = new DoubleArrayList(count);
+        PriorityQueue<Interval> pending = new PriorityQueue<>();
+        for (int k = 0; k < count; k++) {
+            double x = sampleAt(min, max, step, k);
+            double y = sweep.at(x);
+            if (k > 0) {
+                offer(pending, sweep, coarseX.get(k - 1), coarseY.get(k - 1), x, y,
+                        ADAPTIVE_MAX_DEPTH, tolerance);
+            }
+            coarseX.add(x);
+            coarseY.add(y);
+        }
+        List<Interval> split = new ArrayList<>();
+        while (split.size() < ADAPTIVE_MAX_POINTS && !pending.isEmpty()) {
+            Interval worst = pending.poll();
+            split.add(worst);
+            if (worst.depth > 1) {
+                offer(pending, sweep, worst.x0, worst.y0, worst.xm, worst.ym, worst.depth - 1, tolerance);
+                offer(pending, sweep, worst.xm, worst.ym, worst.x1, worst.y1, worst.depth - 1, tolerance);
+            }
+        }
+        split.sort(Comparator.comparingDouble(interval -> interval.xm));
+        // Every midpoint is strictly inside its coarse interval, so merging the two
+        // sorted sequences keeps the output sorted.
+        int next = 0;
+        for (int k = 0; k < count; k++) {
+            while (next < split.size() && split.get(next).xm < coarseX.get(k)) {
+                xValues.add(split.get(next).xm);
+                yValues.add(split.get(next).ym);
+                next++;
+            }
+            xValues.add(coarseX.get(k));
+            yValues.add(coarseY.get(k));
+        }
+    }
+
+    // Evaluates the midpoint of [x0, x1] and queues the interval for splitting if
+    // the midpoint is further than 'tolerance' off the chord. 'depth' is how many
+    // more times it may be halved.
+    private static void offer(PriorityQueue<Interval> pending, Sweep sweep, double x0, double y0,
+                              double x1, double y1, int depth, double tolerance) {
+        double xm = (x0 + x1) / 2;
+        double ym = sweep.at(xm);
+        double deviation = Math.abs(ym - (y0 + y1) / 2);
+        // NaN compares false, so undefined regions are not refined forever.
+        if (deviation > tolerance) {
+            pending.add(new Interval(x0, y0, xm, ym, x1, y1, deviation, depth));
+        }
+    }
+
+    // An interval waiting to be split at its midpoint. The one whose midpoint is
+    // furthest off the chord comes first.
+    private static final class Interval implements Comparable<Interval> {
+        private final double x0;
+        private final double y0;
+        private final double xm;
+        private final double ym;
+        private final double x1;
+        private final double y1;
+        private final double deviation;
+        private final int depth;
+
+        Interval(double x0, double y0, double xm, double ym, double x1, double y1,
+                 double deviation, int depth) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.xm = xm;
+            this.ym = ym;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.deviation = deviation;
+            this.depth = depth;
+        }
+
+        @Override
+        public int compareTo(Interval other) {
+            return Double.compare(other.deviation, this.deviation);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,489 @@
+package calculator.ast;
+
+import calculator.errors.EvaluationError;
+import datastructures.concrete.DynamicArrayList;
+import datastructures.interfaces.IDictionary;
+import datastructures.interfaces.IList;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A whole expression tree stored in a few parallel arrays instead of one AstNode
+ * (and one children list) per node, so big trees take a fraction of the memory and
+ * are walked sequentially rather than by chasing pointers.
+ *
+ * Nodes are numbered in post-order: every node comes after all of its operands, and
+ * the root is last. For node i:
+ *
+ * - getOpcode(i) is NUMBER, VARIABLE, one of the arithmetic opcodes ADD to COS, or
+ *   OTHER for any other operation.
+ * - getArity(i) is its number of operands (0 for numbers and variables).
+ * - getFirstChild(i) is the index of its first operand, or -1 if it has none. Its
+ *   last operand is always i - 1, so for a binary operation the two operands are
+ *   getFirstChild(i) and i - 1.
+ * - getConstant(i) is its value if it is a NUMBER.
+ * - getSymbol(i) is its name if it is a variable or an operation.
+ *
+ * Instances are immutable. An AstNode that shares a subtree between several parents
+ * is stored with one copy of that subtree per parent.
+ */
+public final class FlatExpression {
+    public static final int NUMBER = CompiledExpression.CONST;
+    public static final int VARIABLE = CompiledExpression.LOAD;
+    public static final int ADD = CompiledExpression.ADD;
+    public static final int SUB = CompiledExpression.SUB;
+    public static final int MUL = CompiledExpression.MUL;
+    public static final int DIV = CompiledExpression.DIV;
+    public static final int POW = CompiledExpression.POW;
+    public static final int NEG = CompiledExpression.NEG;
+    public static final int SIN = CompiledExpression.SIN;
+    public static final int COS = CompiledExpression.COS;
+    public static final int OTHER = 10;
+
+    private final byte[] opcodes;
+    private final int[] firstChildren;
+    private final int[] arities;
+    private final double[] constants;
+    // Index into 'symbols' for VARIABLE and OTHER nodes, -1 for the rest.
+    private final int[] symbolIndices;
+    private final String[] symbols;
+    // Most operands 'evaluate' ever has waiting at once.
+    private final int maxStack;
+
+    private FlatExpression(Builder builder) {
+        int size = builder.size;
+        this.opcodes = Arrays.copyOf(builder.opcodes, size);
+        this.firstChildren = Arrays.copyOf(builder.firstChildren, size);
+        this.arities = Arrays.copyOf(builder.arities, size);
+        this.constants = Arrays.copyOf(builder.constants, size);
+        this.symbolIndices = Arrays.copyOf(builder.symbolIndices, size);
+        this.symbols = Arrays.copyOf(builder.symbols, builder.symbolCount);
+        this.maxStack = builder.maxDepth;
+    }
+
+    /**
+     * Returns the flat form of 'node'.
+     */
+    public static FlatExpression of(AstNode node) {
+        Builder builder = new Builder();
+        Deque<AstNode> nodes = new ArrayDeque<>();
+        Deque<Iterator<AstNode>> operands = new ArrayDeque<>();
+        nodes.push(node);
+        operands.push(operandsOf(node));
+        while (!nodes.isEmpty()) {
+            Iterator<AstNode> pending = operands.peek();
+            if (pending.hasNext()) {
+                AstNode operand = pending.next();
+                nodes.push(operand);
+                operands.push(operandsOf(operand));
+                continue;
+            }
+            AstNode current = nodes.pop();
+            operands.pop();
+            if (current.isNumber()) {
+                builder.addNumber(current.getNumericValue());
+            } else if (current.isVariable()) {
+                builder.addVariable(current.getName());
+            } else {
+                builder.addOperation(current.getName(), ExpressionManipulators.operandCount(current));
+            }
+        }
+        return builder.build();
+    }
+
+    private static Iterator<AstNode> operandsOf(AstNode node) {
+        if (node instanceof BinaryNode) {
+            return Arrays.asList(((BinaryNode) node).getLeft(), ((BinaryNode) node).getRight()).iterator();
+        } else if (node instanceof UnaryNode) {
+            return Collections.singletonList(((UnaryNode) node).getOperand()).iterator();
+        } else if (node.isOperation()) {
+            return node.getChildren().iterator();
+        }
+        return Collections.emptyIterator();
+    }
+
+    /**
+     * Returns this expression as a tree of new AstNodes. Operations with one or two
+     * operands become UnaryNodes and BinaryNodes.
+     */
+    public AstNode toAstNode() {
+        Deque<AstNode> built = new ArrayDeque<>();
+        AstNode[] operands = new AstNode[0];
+        for (int i = 0; i < this.opcodes.length; i++) {
+            int opcode = this.opcodes[i];
+            if (opcode == NUMBER) {
+                built.push(NumberNodes.of(this.constants[i]));
+            } else if (opcode == VARIABLE) {
+                built.push(new AstNode(this.getSymbol(i)));
+            } else {
+                int arity = this.arities[i];
+                if (arity == 2) {
+                    AstNode right = built.pop();
+                    built.push(new BinaryNode(this.getSymbol(i), built.pop(), right));
+                    continue;
+                } else if (arity == 1) {
+                    built.push(new UnaryNode(this.getSymbol(i), built.pop()));
+                    continue;
+                }
+                if (operands.length < arity) {
+                    operands = new AstNode[arity];
+                }
+                for (int j = arity - 1; j >= 0; j--) {
+                    operands[j] = built.pop();
+                }
+                IList<AstNode> children = new DynamicArrayList<>(arity);
+                for (int j = 0; j < arity; j++) {
+                    children.add(operands[j]);
+                }
+                built.push(new AstNode(this.getSymbol(i), children));
+            }
+        }
+        return built.pop();
+    }
+
+    public int size() {
+        return this.opcodes.length;
+    }
+
+    /**
+     * Returns the index of the root node, which is always the last one.
+     */
+    public int getRoot() {
+        return this.opcodes.length - 1;
+    }
+
+    public int getOpcode(int index) {
+        return this.opcodes[index];
+    }
+
+    public int getArity(int index) {
+        return this.arities[index];
+    }
+
+    public int getFirstChild(int index) {
+        return this.firstChildren[index];
+    }
+
+    public double getConstant(int index) {
+        return this.constants[index];
+    }
+
+    /**
+     * Returns the name of the variable or operation at 'index', or null for a number.
+     */
+    public String getSymbol(int index) {
+        int opcode = this.opcodes[index];
+        if (opcode == NUMBER) {
+            return null;
+        } else if (opcode == VARIABLE || opcode == OTHER) {
+            return this.symbols[this.symbolIndices[index]];
+        }
+        return opcodeName(opcode);
+    }
+
+    /**
+     * Evaluates this expression as 'toDouble' would, looking its variables up in
+     * 'variables'.
+     *
+     * @throws EvaluationError  if the expression contains an undefined variable
+     * @throws EvaluationError  if the expression uses an unknown operation
+     */
+    public double evaluate(IDictionary<String, AstNode> variables) {
+        return this.evaluate(variables, new HashMap<>());
+    }
+
+    // 'resolved' holds the values of the variables evaluated so far, so a variable
+    // used many times (or reached through many definitions) is only evaluated once.
+    private double evaluate(IDictionary<String, AstNode> variables, Map<String, Double> resolved) {
+        double[] symbolValues = new double[this.symbols.length];
+        boolean[] known = new boolean[this.symbols.length];
+        for (int i = 0; i < this.opcodes.length; i++) {
+            if (this.opcodes[i] == VARIABLE && !known[this.symbolIndices[i]]) {
+                String name = this.symbols[this.symbolIndices[i]];
+                Double value = resolved.get(name);
+                if (value == null) {
+                    AstNode definition = ExpressionManipulators.lookupVariable(variables, name);
+                    if (definition == null) {
+                        throw new EvaluationError("Attempted to call an undefined variable");
+                    }
+                    if (definition.isNumber()) {
+                        // Most assignments store a number; no need to flatten one.
+                        value = definition.getNumericValue();
+                    } else {
+                        value = FlatExpression.of(definition).evaluate(variables, resolved);
+                    }
+                    resolved.put(name, value);
+                }
+                symbolValues[this.symbolIndices[i]] = value;
+                known[this.symbolIndices[i]] = true;
+            } else if (this.opcodes[i] == OTHER
+                    && !ExpressionManipulators.operationsDefined(this.symbols[this.symbolIndices[i]])) {
+                throw new EvaluationError("Attempted to call an unknown operation");
+            }
+        }
+
+        double[] stack = new double[Math.max(1, this.maxStack)];
+        int top = -1;
+        for (int i = 0; i < this.opcodes.length; i++) {
+            int opcode = this.opcodes[i];
+            if (opcode == NUMBER) {
+                stack[++top] = this.constants[i];
+            } else if (opcode == VARIABLE) {
+                stack[++top] = symbolValues[this.symbolIndices[i]];
+            } else if (opcode == OTHER) {
+                // Defined but non-arithmetic operations evaluate to 0, as in toDouble.
+                top -= this.arities[i];
+                stack[++top] = 0.0;
+            } else if (CompiledExpression.isBinary(opcode)) {
+                top--;
+                stack[top] = CompiledExpression.apply(opcode, stack[top], stack[top + 1]);
+            } else {
+                stack[top] = CompiledExpression.apply(opcode, stack[top], 0);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Returns this expression simplified by constant folding:
+     *
+     * - Every defined variable is replaced by its own simplified definition.
+     * - '+', '-', '*', '^' and 'negate' applied only to numbers become a number.
+     * - '/', 'sin' and 'cos' are left as they are, so their results stay exact.
+     *
+     * @throws EvaluationError  if the expression uses an unknown operation
+     */
+    public FlatExpression simplify(IDictionary<String, AstNode> variables) {
+        return this.simplify(variables, new HashMap<>());
+    }
+
+    // 'simplified' holds the simplified definitions of the variables met so far.
+    private FlatExpression simplify(IDictionary<String, AstNode> variables,
+                                    Map<String, FlatExpression> simplified) {
+        Builder builder = new Builder();
+        for (int i = 0; i < this.opcodes.length; i++) {
+            int opcode = this.opcodes[i];
+            if (opcode == NUMBER) {
+                builder.addNumber(this.constants[i]);
+            } else if (opcode == VARIABLE) {
+                String name = this.symbols[this.symbolIndices[i]];
+                FlatExpression definition = simplified.get(name);
+                if (definition == null) {
+                    AstNode node = ExpressionManipulators.lookupVariable(variables, name);
+                    if (node == null) {
+                        builder.addVariable(name);
+                        continue;
+                    }
+                    definition = FlatExpression.of(node).simplify(variables, simplified);
+                    simplified.put(name, definition);
+                }
+                builder.addAll(definition);
+            } else if (opcode == OTHER) {
+                String name = this.symbols[this.symbolIndices[i]];
+                if (!ExpressionManipulators.operationsDefined(name)) {
+                    throw new EvaluationError("operation not defined");
+                }
+                builder.addOperation(name, this.arities[i]);
+            } else if (opcode == DIV || opcode == SIN || opcode == COS || !builder.topIsNumbers(this.arities[i])) {
+                builder.addArithmetic(opcode, this.arities[i]);
+            } else {
+                double right = CompiledExpression.isBinary(opcode) ? builder.popNumber() : 0;
+                double left = builder.popNumber();
+                builder.addNumber(CompiledExpression.apply(opcode, left, right));
+            }
+        }
+        return builder.build();
+    }
+
+    private static String opcodeName(int opcode) {
+        switch (opcode) {
+            case ADD:
+                return "+";
+            case SUB:
+                return "-";
+            case MUL:
+                return "*";
+            case DIV:
+                return "/";
+            case POW:
+                return "^";
+            case NEG:
+                return "negate";
+            case SIN:
+                return "sin";
+            case COS:
+                return "cos";
+            default:
+                throw new IllegalArgumentException("no name for opcode " + opcode);
+        }
+    }
+
+    /**
+     * Appends nodes in post-order and keeps track of where each finished operand's
+     * root is, so operations can record their first operand.
+     */
+    private static class Builder {
+        // Most flattened expressions are variable definitions of a handful of nodes.
+        private static final int INITIAL_CAPACITY = 8;
+        private static final int LINEAR_SYMBOLS = 8;
+
+        private byte[] opcodes = new byte[INITIAL_CAPACITY];
+        private int[] firstChildren = new int[INITIAL_CAPACITY];
+        private int[] arities = new int[INITIAL_CAPACITY];
+        private double[] constants = new double[INITIAL_CAPACITY];
+        private int[] symbolIndices = new int[INITIAL_CAPACITY];
+        private int size = 0;
+
+        private String[] symbols = new String[4];
+        private int symbolCount = 0;
+        // Only built once there are too many symbols to search one by one.
+        private Map<String, Integer> symbolIndex = null;
+
+        // Roots of the finished operands not yet claimed by an operation.
+        private int[] roots = new int[INITIAL_CAPACITY];
+        private int depth = 0;
+        private int maxDepth = 0;
+
+        void addNumber(double value) {
+            int index = this.append(NUMBER, -1, 0);
+            this.constants[index] = value;
+            this.pushRoot(index);
+        }
+
+        void addVariable(String name) {
+            int index = this.append(VARIABLE, -1, 0);
+            this.symbolIndices[index] = this.intern(name);
+            this.pushRoot(index);
+        }
+
+        // Adds an operation by name, as OTHER unless it is arithmetic with the right
+        // number of operands.
+        void addOperation(String name, int arity) {
+            int opcode = CompiledExpression.opcodeOf(name);
+            if (opcode >= 0 && arity == (CompiledExpression.isBinary(opcode) ? 2 : 1)) {
+                this.addArithmetic(opcode, arity);
+                return;
+            }
+            int index = this.addParent(OTHER, arity);
+            this.symbolIndices[index] = this.intern(name);
+        }
+
+        void addArithmetic(int opcode, int arity) {
+            this.addParent(opcode, arity);
+        }
+
+        // Appends every node of 'other' as one more finished operand.
+        void addAll(FlatExpression other) {
+            for (int i = 0; i < other.size(); i++) {
+                int opcode = other.opcodes[i];
+                if (opcode == NUMBER) {
+                    this.addNumber(other.constants[i]);
+                } else if (opcode == VARIABLE) {
+                    this.addVariable(other.symbols[other.symbolIndices[i]]);
+                } else if (opcode == OTHER) {
+                    int index = this.addParent(OTHER, other.arities[i]);
+                    this.symbolIndices[index] = this.intern(other.symbols[other.symbolIndices[i]]);
+                } else {
+                    this.addParent(opcode, other.arities[i]);
+                }
+            }
+        }
+
+        // Whether the last 'count' unclaimed operands are all single numbers.
+        boolean topIsNumbers(int count) {
+            if (count > this.depth) {
+                return false;
+            }
+            for (int i = this.depth - count; i < this.depth; i++) {
+                if (this.opcodes[this.roots[i]] != NUMBER) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Removes the last node, which must be an unclaimed number, and returns its value.
+        double popNumber() {
+            this.size--;
+            this.depth--;
+            return this.constants[this.size];
+        }
+
+        FlatExpression build() {
+            if (this.depth != 1) {
+                throw new IllegalStateException("expression has " + this.depth + " roots");
+            }
+            return new FlatExpression(this);
+        }
+
+        private int addParent(int opcode, int arity) {
+            int firstChild = arity == 0 ? -1 : this.roots[this.depth - arity];
+            this.depth -= arity;
+            int index = this.append(opcode, firstChild, arity);
+            this.pushRoot(index);
+            return index;
+        }
+
+        private int append(int opcode, int firstChild, int arity) {
+            if (this.size == this.opcodes.length) {
+                int capacity = 2 * this.size;
+                this.opcodes = Arrays.copyOf(this.opcodes, capacity);
+                this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+                this.arities = Arrays.copyOf(this.arities, capacity);
+                this.constants = Arrays.copyOf(this.constants, capacity);
+                this.symbolIndices = Arrays.copyOf(this.symbolIndices, capacity);
+            }
+            int index = this.size++;
+            this.opcodes[index] = (byte) opcode;
+            this.firstChildren[index] = firstChild;
+            this.arities[index] = arity;
+            this.constants[index] = 0;
+            this.symbolIndices[index] = -1;
+            return index;
+        }
+
+        private void pushRoot(int index) {
+            if (this.depth == this.roots.length) {
+                this.roots = Arrays.copyOf(this.roots, 2 * this.depth);
+            }
+            this.roots[this.depth++] = index;
+            this.maxDepth = Math.max(this.maxDepth, this.depth);
+        }
+
+        private int intern(String name) {
+            if (this.symbolIndex == null) {
+                for (int i = 0; i < this.symbolCount; i++) {
+                    if (this.symbols[i].equals(name)) {
+                        return i;
+                    }
+                }
+                if (this.symbolCount >= LINEAR_SYMBOLS) {
+                    this.symbolIndex = new HashMap<>();
+                    for (int i = 0; i < this.symbolCount; i++) {
+                        this.symbolIndex.put(this.symbols[i], i);
+                    }
+                }
+            } else {
+                Integer index = this.symbolIndex.get(name);
+                if (index != null) {
+                    return index;
+                }
+            }
+            if (this.symbolCount == this.symbols.length) {
+                this.symbols = Arrays.copyOf(this.symbols, 2 * this.symbolCount);
+            }
+            int index = this.symbolCount++;
+            this.symbols[index] = name;
+            if (this.symbolIndex != null) {
+                this.symbolIndex.put(name, index);
+            }
+            return index;
+        }
+    }
+}
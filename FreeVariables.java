@@ -0,0 +1,112 @@
+package calculator.ast;
+
+import datastructures.interfaces.IDictionary;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The variables an expression mentions, and whether it uses an operation the
+ * calculator does not know.
+ *
+ * The analysis of an expression walks its tree once and is then cached for its root
+ * (weakly, so it goes away with the node), which makes later checks of the same
+ * expression, such as replotting it, cost O(number of variables). Only roots are
+ * cached, so a subtree is skipped by a later walk only if it was itself analysed
+ * as a root before, e.g. an expression that is later plotted as part of a bigger
+ * one. AstNodes are never modified after they are built, so a cached result stays
+ * valid.
+ *
+ * Each analysis keeps its own array of variable names, so names are only held for
+ * as long as an expression that mentions them is cached. Only the variables
+ * written in the expression itself are included, not those used in the
+ * definitions of defined variables.
+ */
+final class FreeVariables {
+    private static final Map<AstNode, FreeVariables> cache =
+            Collections.synchronizedMap(new WeakHashMap<AstNode, FreeVariables>());
+
+    private final String[] variables;
+    private final boolean unknownOperation;
+
+    private FreeVariables(String[] variables, boolean unknownOperation) {
+        this.variables = variables;
+        this.unknownOperation = unknownOperation;
+    }
+
+    /**
+     * Returns the analysis of 'node', computing it the first time it is asked for.
+     */
+    static FreeVariables of(AstNode node) {
+        FreeVariables result = cache.get(node);
+        if (result == null) {
+            Set<String> found = new HashSet<>();
+            boolean unknown = collect(node, found);
+            result = new FreeVariables(found.toArray(new String[0]), unknown);
+            cache.put(node, result);
+        }
+        return result;
+    }
+
+    /**
+     * Whether the expression uses an operation the calculator does not know.
+     */
+    boolean hasUnknownOperation() {
+        return unknownOperation;
+    }
+
+    /**
+     * Whether every variable the expression mentions, except 'ignored' (which may be
+     * null), is defined in 'definitions'.
+     */
+    boolean allDefined(IDictionary<String, AstNode> definitions, String ignored) {
+        for (String name : variables) {
+            if (!name.equals(ignored) && !definitions.containsKey(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Adds the names of the variables below 'node' to 'found'. Returns true if an
+    // unknown operation was seen. Reuses the cached analysis of any subtree analysed
+    // as a root before, and keeps its own stack so deep expressions cannot overflow
+    // the call stack.
+    private static boolean collect(AstNode node, Set<String> found) {
+        boolean unknown = false;
+        Deque<AstNode> pending = new ArrayDeque<>();
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            AstNode current = pending.pop();
+            if (current.isNumber()) {
+                continue;
+            } else if (current.isVariable()) {
+                found.add(current.getName());
+                continue;
+            }
+            FreeVariables known = cache.get(current);
+            if (known != null) {
+                Collections.addAll(found, known.variables);
+                unknown = unknown || known.unknownOperation;
+                continue;
+            }
+            unknown = unknown || !ExpressionManipulators.operationsDefined(current.getName());
+            if (current instanceof BinaryNode) {
+                pending.push(((BinaryNode) current).getRight());
+                pending.push(((BinaryNode) current).getLeft());
+            } else if (current instanceof UnaryNode) {
+                pending.push(((UnaryNode) current).getOperand());
+            } else {
+                for (AstNode child : current.getChildren()) {
+                    pending.push(child);
+                }
+            }
+        }
+        return unknown;
+    }
+}
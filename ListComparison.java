@@ -0,0 +1,168 @@
+package analysis.experiments;
+
+import datastructures.concrete.DoubleLinkedList;
+import datastructures.concrete.DynamicArrayList;
+import datastructures.concrete.UnrolledLinkedList;
+import datastructures.interfaces.IList;
+
+/**
+ * Times DoubleLinkedList, DynamicArrayList and UnrolledLinkedList side by side on
+ * the list workloads of the experiments, over the same input sizes (0 to 19900 in
+ * steps of 100), and prints one CSV row per size. Times are average nanoseconds
+ * per trial, so fast operations do not round down to 0.
+ *
+ * - Add: build a list of the given size with 'add' (experiment 2).
+ * - Get: call get(i) for every index in order (experiment 3).
+ * - Iterate: visit every element with the iterator.
+ * - ArrayAddLoop, ArrayAddAll: copy a DynamicArrayList of the given size into an
+ *   empty one, by calling 'add' for each element or with one 'addAll' call.
+ * - UnrolledAppend, UnrolledConcat: join two UnrolledLinkedLists of half the size,
+ *   by adding each element of the second to the first or with one 'concat' call.
+ *   The two halves are rebuilt before every trial and that is not timed.
+ *
+ * Experiment 1 measures dictionaries rather than lists, so it is not repeated here;
+ * MemoryExperiment covers experiment 4, which measures memory rather than time.
+ */
+public class ListComparison {
+    private static final int MAX_SIZE = 20000;
+    private static final int STEP = 100;
+    private static final int WARMUP_TRIALS = 5;
+    private static final int TRIALS = 10;
+
+    private static final int LINKED = 0;
+    private static final int ARRAY = 1;
+    private static final int UNROLLED = 2;
+
+    // Written to so the JIT cannot drop the loops being timed.
+    private static volatile long sink = 0;
+
+    public static void main(String[] args) {
+        System.out.println("InputListSize,LinkedAdd,ArrayAdd,UnrolledAdd,LinkedGet,ArrayGet,UnrolledGet,"
+                + "LinkedIterate,ArrayIterate,UnrolledIterate,ArrayAddLoop,ArrayAddAll,UnrolledAppend,UnrolledConcat");
+        for (int size = 0; size < MAX_SIZE; size += STEP) {
+            IList<Long> linked = build(new DoubleLinkedList<>(), size);
+            IList<Long> array = build(new DynamicArrayList<>(), size);
+            IList<Long> unrolled = build(new UnrolledLinkedList<>(), size);
+            System.out.println(size
+                    + "," + timeAdd(LINKED, size) + "," + timeAdd(ARRAY, size) + "," + timeAdd(UNROLLED, size)
+                    + "," + timeGet(linked) + "," + timeGet(array) + "," + timeGet(unrolled)
+                    + "," + timeIterate(linked) + "," + timeIterate(array) + "," + timeIterate(unrolled)
+                    + "," + timeAddAll(array, false) + "," + timeAddAll(array, true)
+                    + "," + timeConcat(size, false) + "," + timeConcat(size, true));
+        }
+    }
+
+    private static IList<Long> build(IList<Long> list, int size) {
+        for (long i = 0; i < size; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    private static IList<Long> newList(int kind) {
+        if (kind == LINKED) {
+            return new DoubleLinkedList<>();
+        } else if (kind == ARRAY) {
+            return new DynamicArrayList<>();
+        } else {
+            return new UnrolledLinkedList<>();
+        }
+    }
+
+    private static long timeAdd(int kind, int size) {
+        long total = 0;
+        for (int trial = 0; trial < WARMUP_TRIALS + TRIALS; trial++) {
+            long start = System.nanoTime();
+            IList<Long> list = build(newList(kind), size);
+            long elapsed = System.nanoTime() - start;
+            sink += list.size();
+            if (trial >= WARMUP_TRIALS) {
+                total += elapsed;
+            }
+        }
+        return total / TRIALS;
+    }
+
+    private static long timeGet(IList<Long> list) {
+        long total = 0;
+        for (int trial = 0; trial < WARMUP_TRIALS + TRIALS; trial++) {
+            long sum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < list.size(); i++) {
+                sum += list.get(i);
+            }
+            long elapsed = System.nanoTime() - start;
+            sink += sum;
+            if (trial >= WARMUP_TRIALS) {
+                total += elapsed;
+            }
+        }
+        return total / TRIALS;
+    }
+
+    private static long timeIterate(IList<Long> list) {
+        long total = 0;
+        for (int trial = 0; trial < WARMUP_TRIALS + TRIALS; trial++) {
+            long sum = 0;
+            long start = System.nanoTime();
+            for (long value : list) {
+                sum += value;
+            }
+            long elapsed = System.nanoTime() - start;
+            sink += sum;
+            if (trial >= WARMUP_TRIALS) {
+                total += elapsed;
+            }
+        }
+        return total / TRIALS;
+    }
+
+    // Copies 'source' into a new DynamicArrayList with one 'addAll' call if 'bulk',
+    // otherwise with one 'add' per element.
+    private static long timeAddAll(IList<Long> source, boolean bulk) {
+        long total = 0;
+        for (int trial = 0; trial < WARMUP_TRIALS + TRIALS; trial++) {
+            long start = System.nanoTime();
+            DynamicArrayList<Long> list = new DynamicArrayList<>();
+            if (bulk) {
+                list.addAll(source);
+            } else {
+                for (Long item : source) {
+                    list.add(item);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            sink += list.size();
+            if (trial >= WARMUP_TRIALS) {
+                total += elapsed;
+            }
+        }
+        return total / TRIALS;
+    }
+
+    // Appends a half-size UnrolledLinkedList to another with 'concat' if 'bulk',
+    // otherwise with one 'add' per element.
+    private static long timeConcat(int size, boolean bulk) {
+        long total = 0;
+        for (int trial = 0; trial < WARMUP_TRIALS + TRIALS; trial++) {
+            UnrolledLinkedList<Long> first = new UnrolledLinkedList<>();
+            UnrolledLinkedList<Long> second = new UnrolledLinkedList<>();
+            build(first, size / 2);
+            build(second, size - size / 2);
+            long start = System.nanoTime();
+            if (bulk) {
+                first.concat(second);
+            } else {
+                for (Long item : second) {
+                    first.add(item);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            sink += first.size();
+            if (trial >= WARMUP_TRIALS) {
+                total += elapsed;
+            }
+        }
+        return total / TRIALS;
+    }
+}
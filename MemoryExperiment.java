@@ -0,0 +1,106 @@
+package analysis.experiments;
+
+import calculator.ast.AstNode;
+import datastructures.concrete.ChainedHashDictionary;
+import datastructures.concrete.DoubleArrayList;
+import datastructures.concrete.DoubleLinkedList;
+import datastructures.concrete.DynamicArrayList;
+import datastructures.concrete.UnrolledLinkedList;
+import datastructures.interfaces.IList;
+import misc.MemoryLayout;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Prints, in the same shape as experiment4.csv, the estimated bytes retained by each
+ * data structure in the project when it holds 0 to 19900 elements (in steps of 100).
+ *
+ * - Linked, Array, Unrolled: a DoubleLinkedList, DynamicArrayList or
+ *   UnrolledLinkedList of that many Longs.
+ * - DoubleArray: a DoubleArrayList of that many doubles.
+ * - HashDictionary: a ChainedHashDictionary mapping that many Longs to Longs.
+ * - AstTree: the expression 0 + 1 + 2 + ... with that many number nodes.
+ *
+ * Sizes come from MemoryLayout estimates rather than from the garbage collector, so
+ * they are exact and repeatable but assume a typical 64-bit JVM layout.
+ */
+public class MemoryExperiment {
+    private static final int MAX_SIZE = 20000;
+    private static final int STEP = 100;
+
+    public static void main(String[] args) {
+        System.out.println("InputListSize,Linked,Array,Unrolled,DoubleArray,HashDictionary,AstTree");
+        for (int size = 0; size < MAX_SIZE; size += STEP) {
+            IList<Long> linked = new DoubleLinkedList<>();
+            DynamicArrayList<Long> array = new DynamicArrayList<>();
+            UnrolledLinkedList<Long> unrolled = new UnrolledLinkedList<>();
+            DoubleArrayList doubles = new DoubleArrayList();
+            ChainedHashDictionary<Long, Long> dictionary = new ChainedHashDictionary<>();
+            AstNode tree = new AstNode(0);
+            for (long i = 0; i < size; i++) {
+                linked.add(i);
+                array.add(i);
+                unrolled.add(i);
+                doubles.add(i);
+                dictionary.put(i, i);
+                if (i > 0) {
+                    IList<AstNode> children = new DoubleLinkedList<>();
+                    children.add(tree);
+                    children.add(new AstNode(i));
+                    tree = new AstNode("+", children);
+                }
+            }
+            System.out.println(size + "," + estimateLinkedListBytes(linked) + "," + array.estimateBytes()
+                    + "," + unrolled.estimateBytes() + "," + doubles.estimateBytes()
+                    + "," + dictionary.estimateBytes() + "," + estimateTreeBytes(tree));
+        }
+    }
+
+    /**
+     * Estimated bytes retained by a DoubleLinkedList: the list object (front, back,
+     * size), one node per element (data, prev, next) and each element.
+     */
+    public static long estimateLinkedListBytes(IList<?> list) {
+        long bytes = MemoryLayout.object(2, 4);
+        for (Object item : list) {
+            bytes += MemoryLayout.object(3, 0) + MemoryLayout.boxed(item);
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimated bytes retained by the expression tree under 'root': each distinct
+     * node (name, children and a double value), its name and its children list.
+     * A subtree shared by several parents is counted once, and the walk is iterative
+     * so deep left-leaning sums do not overflow the stack.
+     */
+    public static long estimateTreeBytes(AstNode root) {
+        Set<AstNode> seen = Collections.newSetFromMap(new IdentityHashMap<AstNode, Boolean>());
+        Deque<AstNode> pending = new ArrayDeque<>();
+        pending.push(root);
+        long bytes = 0;
+        while (!pending.isEmpty()) {
+            AstNode node = pending.pop();
+            if (!seen.add(node)) {
+                continue;
+            }
+            bytes += MemoryLayout.object(2, 8);
+            if (!node.isNumber()) {
+                bytes += MemoryLayout.boxed(node.getName());
+            }
+            IList<AstNode> children = node.getChildren();
+            if (children != null) {
+                // The children themselves are counted as nodes, not as list payload.
+                bytes += MemoryLayout.object(2, 4) + children.size() * MemoryLayout.object(3, 0);
+                for (AstNode child : children) {
+                    pending.push(child);
+                }
+            }
+        }
+        return bytes;
+    }
+}
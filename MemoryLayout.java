@@ -0,0 +1,68 @@
+package misc;
+
+/**
+ * Estimates of how many bytes objects take on a typical 64-bit JVM with compressed
+ * references: a 12-byte object header, 4-byte references, a 16-byte array header and
+ * every object rounded up to a multiple of 8 bytes.
+ *
+ * These are layout estimates, not measurements; a JVM with different settings may
+ * use somewhat more or less.
+ */
+public final class MemoryLayout {
+    public static final int OBJECT_HEADER = 12;
+    public static final int ARRAY_HEADER = 16;
+    public static final int REFERENCE = 4;
+    public static final int ALIGNMENT = 8;
+
+    private MemoryLayout() {
+    }
+
+    /**
+     * Size of an object with 'references' reference fields and 'primitiveBytes'
+     * bytes of primitive fields.
+     */
+    public static long object(int references, int primitiveBytes) {
+        return align(OBJECT_HEADER + (long) references * REFERENCE + primitiveBytes);
+    }
+
+    /**
+     * Size of an array of 'length' references.
+     */
+    public static long referenceArray(long length) {
+        return align(ARRAY_HEADER + length * REFERENCE);
+    }
+
+    /**
+     * Size of an array of 'length' elements of 'elementBytes' bytes each.
+     */
+    public static long primitiveArray(long length, int elementBytes) {
+        return align(ARRAY_HEADER + length * elementBytes);
+    }
+
+    /**
+     * Size of 'value' if it is a boxed primitive or a String (counting its
+     * characters as one byte each, as compact strings do for Latin-1 text);
+     * 0 for null; otherwise the size of an object with no fields.
+     */
+    public static long boxed(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Double || value instanceof Long) {
+            return object(0, 8);
+        } else if (value instanceof Integer || value instanceof Float) {
+            return object(0, 4);
+        } else if (value instanceof Short || value instanceof Character) {
+            return object(0, 2);
+        } else if (value instanceof Byte || value instanceof Boolean) {
+            return object(0, 1);
+        } else if (value instanceof String) {
+            // String: value array ref, hash, coder and hashIsZero fields.
+            return object(1, 6) + primitiveArray(((String) value).length(), 1);
+        }
+        return object(0, 0);
+    }
+
+    public static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,68 @@
+package calculator.ast;
+
+import datastructures.interfaces.IList;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * An empty IList that cannot be changed. BinaryNode and UnaryNode hand the single
+ * instance to AstNode as its children list, so AstNode never sees a null list but
+ * no node pays for a list of its own.
+ */
+final class NoChildren implements IList<AstNode> {
+    static final NoChildren INSTANCE = new NoChildren();
+
+    private NoChildren() {
+    }
+
+    @Override
+    public void add(AstNode item) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public AstNode remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public AstNode get(int index) {
+        throw new IndexOutOfBoundsException("index " + index + ", size 0");
+    }
+
+    @Override
+    public void set(int index, AstNode item) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void insert(int index, AstNode item) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public AstNode delete(int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int indexOf(AstNode item) {
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return 0;
+    }
+
+    @Override
+    public boolean contains(AstNode other) {
+        return false;
+    }
+
+    @Override
+    public Iterator<AstNode> iterator() {
+        return Collections.emptyIterator();
+    }
+}
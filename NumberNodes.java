@@ -0,0 +1,50 @@
+package calculator.ast;
+
+/**
+ * Hands out number AstNodes, reusing one shared node for each common value instead
+ * of allocating a new one every time.
+ *
+ * The shared values are the integers from MIN_CACHED to MAX_CACHED plus a few
+ * common fractions (0.5, -0.5, 0.25, -0.25, 1.5). Any other value gets a new node.
+ * Negative zero is never shared with zero, since the two behave differently (for
+ * example 1 / -0.0 is negative infinity).
+ *
+ * Number nodes are never modified once built, so sharing them is safe; callers
+ * must likewise never modify the children list of a node they got from here.
+ */
+public final class NumberNodes {
+    private static final int MIN_CACHED = -128;
+    private static final int MAX_CACHED = 1024;
+    private static final AstNode[] INTEGERS = new AstNode[MAX_CACHED - MIN_CACHED + 1];
+    private static final double[] FRACTIONS = {0.5, -0.5, 0.25, -0.25, 1.5};
+    private static final AstNode[] FRACTION_NODES = new AstNode[FRACTIONS.length];
+
+    static {
+        for (int i = 0; i < INTEGERS.length; i++) {
+            INTEGERS[i] = new AstNode(i + MIN_CACHED);
+        }
+        for (int i = 0; i < FRACTIONS.length; i++) {
+            FRACTION_NODES[i] = new AstNode(FRACTIONS[i]);
+        }
+    }
+
+    private NumberNodes() {
+    }
+
+    /**
+     * Returns a number AstNode holding 'value', shared if 'value' is a common one.
+     */
+    public static AstNode of(double value) {
+        int integer = (int) value;
+        if (integer == value && integer >= MIN_CACHED && integer <= MAX_CACHED
+                && (integer != 0 || Double.doubleToRawLongBits(value) == 0L)) {
+            return INTEGERS[integer - MIN_CACHED];
+        }
+        for (int i = 0; i < FRACTIONS.length; i++) {
+            if (FRACTIONS[i] == value) {
+                return FRACTION_NODES[i];
+            }
+        }
+        return new AstNode(value);
+    }
+}
@@ -0,0 +1,100 @@
+package calculator.ast;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the sampled points of recent plots so that replotting an unchanged
+ * expression over the same range skips evaluation.
+ *
+ * Entries are evicted least-recently-used first once the estimated size of all the
+ * stored samples goes over the byte limit.
+ */
+public class PlotCache {
+    // Rough per-entry cost besides the samples: map entry, key object, two array headers.
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+
+    private final LinkedHashMap<String, double[][]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public PlotCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns {xValues, yValues} stored under 'key', or null if there is none.
+     */
+    public synchronized double[][] get(String key) {
+        double[][] samples = entries.get(key);
+        if (samples == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return samples;
+    }
+
+    /**
+     * Stores the samples under 'key', evicting older entries as needed. The arrays
+     * must not be modified afterwards. Samples larger than the whole cache are not stored.
+     */
+    public synchronized void put(String key, double[] xValues, double[] yValues) {
+        long size = sizeOf(key, xValues.length);
+        if (size > maxBytes) {
+            return;
+        }
+        double[][] old = entries.put(key, new double[][] {xValues, yValues});
+        if (old != null) {
+            bytes -= sizeOf(key, old[0].length);
+        }
+        bytes += size;
+        Iterator<Map.Entry<String, double[][]>> iter = entries.entrySet().iterator();
+        while (bytes > maxBytes && iter.hasNext()) {
+            Map.Entry<String, double[][]> eldest = iter.next();
+            bytes -= sizeOf(eldest.getKey(), eldest.getValue()[0].length);
+            iter.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Whether a sweep of 'count' points could be stored at all.
+     */
+    public boolean fits(long count) {
+        return 16 * count + ENTRY_OVERHEAD_BYTES <= maxBytes;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static long sizeOf(String key, int count) {
+        return 16L * count + 2L * key.length() + ENTRY_OVERHEAD_BYTES;
+    }
+}
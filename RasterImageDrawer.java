@@ -0,0 +1,190 @@
+package calculator.gui;
+
+import datastructures.interfaces.IList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Draws scatter plots into an in-memory pixel buffer and saves them as PNG files,
+ * without opening any window. Meant for machines with no display.
+ *
+ * Points are written straight into an int[] of 0xRRGGBB pixels, so drawing cost is
+ * one array store per point. Titles and axis labels are not rendered.
+ */
+public class RasterImageDrawer {
+    private static final int BACKGROUND = 0xFFFFFF;
+    private static final int AXIS_COLOR = 0x000000;
+    private static final int POINT_COLOR = 0x1F4FD0;
+    // Blank border, in pixels, left around the plotted area.
+    private static final int MARGIN = 16;
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final int width;
+    private final int height;
+    private final File output;
+    private final int[] pixels;
+
+    /**
+     * Creates a drawer whose plots are 'width' by 'height' pixels and are written to
+     * 'output' (overwriting it) every time a plot is drawn.
+     */
+    public RasterImageDrawer(int width, int height, File output) {
+        if (width <= 2 * MARGIN || height <= 2 * MARGIN) {
+            throw new IllegalArgumentException("image is too small");
+        }
+        this.width = width;
+        this.height = height;
+        this.output = output;
+        this.pixels = new int[width * height];
+    }
+
+    /**
+     * Draws the points (xValues[i], yValues[i]) and writes the image to the output file.
+     * Takes the same arguments as ImageDrawer.drawScatterPlot.
+     */
+    public void drawScatterPlot(String title, String xAxisLabel, String yAxisLabel,
+                                IList<Double> xValues, IList<Double> yValues) {
+        int count = Math.min(xValues.size(), yValues.size());
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        Iterator<Double> xIter = xValues.iterator();
+        Iterator<Double> yIter = yValues.iterator();
+        for (int i = 0; i < count; i++) {
+            xs[i] = xIter.next();
+            ys[i] = yIter.next();
+        }
+        drawScatterPlot(xs, ys, count);
+    }
+
+    /**
+     * Draws the first 'count' points (xs[i], ys[i]) and writes the image to the output file.
+     */
+    public void drawScatterPlot(double[] xs, double[] ys, int count) {
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            if (isFinite(xs[i]) && isFinite(ys[i])) {
+                minX = Math.min(minX, xs[i]);
+                maxX = Math.max(maxX, xs[i]);
+                minY = Math.min(minY, ys[i]);
+                maxY = Math.max(maxY, ys[i]);
+            }
+        }
+        Arrays.fill(pixels, BACKGROUND);
+        int plotWidth = width - 2 * MARGIN - 1;
+        int plotHeight = height - 2 * MARGIN - 1;
+        double scaleX = maxX > minX ? plotWidth / (maxX - minX) : 0;
+        double scaleY = maxY > minY ? plotHeight / (maxY - minY) : 0;
+
+        // Axes along the left and bottom of the plotted area.
+        for (int x = MARGIN; x <= width - MARGIN; x++) {
+            pixels[(height - MARGIN) * width + x] = AXIS_COLOR;
+        }
+        for (int y = MARGIN; y <= height - MARGIN; y++) {
+            pixels[y * width + MARGIN] = AXIS_COLOR;
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (isFinite(xs[i]) && isFinite(ys[i])) {
+                int px = MARGIN + (int) ((xs[i] - minX) * scaleX);
+                int py = height - MARGIN - 1 - (int) ((ys[i] - minY) * scaleY);
+                // 2x2 dot; px + 1 and py - 1 stay inside because of the margin.
+                int at = py * width + px;
+                pixels[at] = POINT_COLOR;
+                pixels[at + 1] = POINT_COLOR;
+                pixels[at - width] = POINT_COLOR;
+                pixels[at - width + 1] = POINT_COLOR;
+            }
+        }
+        try (OutputStream out = new FileOutputStream(output)) {
+            writePng(pixels, width, height, out);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not write " + output, e);
+        }
+    }
+
+    /**
+     * Returns the pixels of the last plot, row by row from the top, as 0xRRGGBB values.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Encodes 'width' by 'height' pixels (0xRRGGBB, row by row from the top; any
+     * alpha byte is ignored) as an 8-bit RGB PNG.
+     */
+    public static void writePng(int[] pixels, int width, int height, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(PNG_SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8);  // bit depth
+        headerData.writeByte(2);  // color type: RGB
+        headerData.writeByte(0);  // compression
+        headerData.writeByte(0);  // filter
+        headerData.writeByte(0);  // interlace
+        writeChunk(data, "IHDR", header.toByteArray());
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed, deflater, 1 << 16)) {
+            byte[] row = new byte[1 + 3 * width];
+            for (int y = 0; y < height; y++) {
+                row[0] = 0;  // no filter
+                int at = 1;
+                for (int x = 0; x < width; x++) {
+                    int pixel = pixels[y * width + x];
+                    row[at] = (byte) (pixel >> 16);
+                    row[at + 1] = (byte) (pixel >> 8);
+                    row[at + 2] = (byte) pixel;
+                    at += 3;
+                }
+                deflate.write(row);
+            }
+        } finally {
+            deflater.end();
+        }
+        writeChunk(data, "IDAT", compressed.toByteArray());
+        writeChunk(data, "IEND", new byte[0]);
+        data.flush();
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] body) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        out.writeInt(body.length);
+        out.write(typeBytes);
+        out.write(body);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(body);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+}
@@ -0,0 +1,20 @@
+package calculator.ast;
+
+/**
+ * Receives the points of a plot sweep a chunk at a time, in increasing x order.
+ *
+ * The arrays passed to 'accept' are reused for the next chunk, so an implementation
+ * must copy out anything it wants to keep before returning.
+ */
+public interface SampleSink {
+    /**
+     * Receives the next 'count' points: (xValues[i], yValues[i]) for 0 <= i < count.
+     */
+    void accept(double[] xValues, double[] yValues, int count);
+
+    /**
+     * Called once after the last chunk has been accepted.
+     */
+    default void finish() {
+    }
+}
@@ -0,0 +1,177 @@
+package calculator.ast;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file of plot samples, read and written through memory-mapped windows so
+ * that even very large sweeps never pass through the Java heap.
+ *
+ * Layout (all little-endian):
+ *
+ * - int    MAGIC ("PLT1")
+ * - int    VERSION
+ * - long   number of points
+ * - then for every point, in order: double x, double y
+ */
+public final class SweepFile implements Closeable {
+    public static final int MAGIC = 0x31544C50;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    private static final int POINT_BYTES = 16;
+    // Points per mapped window (64 MB); a single mapping cannot exceed 2 GB.
+    private static final long WINDOW_POINTS = 1L << 22;
+
+    private final FileChannel channel;
+    private final long count;
+    private MappedByteBuffer window;
+    private long windowStart = -1;
+
+    private SweepFile(FileChannel channel, long count) {
+        this.channel = channel;
+        this.count = count;
+    }
+
+    /**
+     * Opens an existing sweep file for reading.
+     *
+     * @throws IOException  if the file cannot be read or is not a sweep file
+     */
+    public static SweepFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException(path + " is not a sweep file");
+        }
+        return new SweepFile(channel, header.getLong(8));
+    }
+
+    /**
+     * Creates (or truncates) a sweep file that will hold exactly 'count' points and
+     * returns a sink that fills it in order.
+     */
+    public static Writer create(Path path, long count) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(count).flip();
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new Writer(channel, count);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double x(long index) {
+        return point(index, 0);
+    }
+
+    public double y(long index) {
+        return point(index, 8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private double point(long index, int offset) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("point " + index + " of " + count);
+        }
+        long start = index - index % WINDOW_POINTS;
+        if (start != windowStart) {
+            window = map(channel, FileChannel.MapMode.READ_ONLY, start, count);
+            windowStart = start;
+        }
+        return window.getDouble((int) ((index - start) * POINT_BYTES) + offset);
+    }
+
+    // Maps the window of points starting at point 'start'.
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode,
+                                        long start, long count) {
+        long points = Math.min(WINDOW_POINTS, count - start);
+        try {
+            MappedByteBuffer buffer = channel.map(mode, HEADER_BYTES + start * POINT_BYTES,
+                    points * POINT_BYTES);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes points to a sweep file as they arrive. 'finish' flushes the file to disk
+     * and closes it.
+     */
+    public static final class Writer implements SampleSink, Closeable {
+        private final FileChannel channel;
+        private final long count;
+        private MappedByteBuffer window;
+        private long written = 0;
+
+        private Writer(FileChannel channel, long count) {
+            this.channel = channel;
+            this.count = count;
+        }
+
+        @Override
+        public void accept(double[] xValues, double[] yValues, int chunk) {
+            if (written + chunk > count) {
+                throw new IllegalStateException("more points than the file was created for");
+            }
+            for (int i = 0; i < chunk; i++) {
+                if (written % WINDOW_POINTS == 0) {
+                    if (window != null) {
+                        window.force();
+                    }
+                    window = map(channel, FileChannel.MapMode.READ_WRITE, written, count);
+                }
+                window.putDouble(xValues[i]);
+                window.putDouble(yValues[i]);
+                written++;
+            }
+        }
+
+        @Override
+        public void finish() {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (window != null) {
+                window.force();
+                window = null;
+            }
+            if (channel.isOpen()) {
+                // The header was written through the channel rather than a mapping.
+                channel.force(false);
+                channel.close();
+            }
+        }
+    }
+}
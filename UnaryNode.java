@@ -0,0 +1,43 @@
+package calculator.ast;
+
+import datastructures.concrete.DynamicArrayList;
+import datastructures.interfaces.IList;
+
+/**
+ * An operation AstNode with exactly one operand, such as 'negate', 'sin' or
+ * 'simplify', kept in a field instead of a children list.
+ *
+ * As with BinaryNode, getChildren builds a list on first use for code that expects
+ * one; treat it as read-only.
+ */
+public class UnaryNode extends AstNode {
+    private final AstNode operand;
+    private IList<AstNode> children = null;
+
+    public UnaryNode(String name, AstNode operand) {
+        super(name, NoChildren.INSTANCE);
+        if (operand == null) {
+            throw new IllegalArgumentException("operand may not be null");
+        }
+        this.operand = operand;
+    }
+
+    public AstNode getOperand() {
+        return this.operand;
+    }
+
+    @Override
+    public IList<AstNode> getChildren() {
+        if (this.children == null) {
+            IList<AstNode> list = new DynamicArrayList<>(1);
+            list.add(this.operand);
+            this.children = list;
+        }
+        return this.children;
+    }
+
+    @Override
+    public String toString() {
+        return this.getName() + "(" + this.operand + ")";
+    }
+}
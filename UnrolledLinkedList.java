@@ -0,0 +1,355 @@
+package datastructures.concrete;
+
+import datastructures.interfaces.IList;
+import misc.MemoryLayout;
+import misc.exceptions.EmptyContainerException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An IList made of doubly linked nodes that each hold up to NODE_CAPACITY elements
+ * in a small array.
+ *
+ * Like DoubleLinkedList, adding or removing at either end takes O(1) time. Because
+ * neighboring elements share a node, there are far fewer node objects and pointers
+ * per element, and walking the list touches memory mostly in order. 'get', 'set',
+ * 'insert' and 'delete' at an index skip over whole nodes from whichever end is
+ * closer, so they take O(n / NODE_CAPACITY) time.
+ */
+public class UnrolledLinkedList<T> implements IList<T> {
+    private static final int NODE_CAPACITY = 16;
+
+    private Node<T> front;
+    private Node<T> back;
+    private int size;
+    // Index of the first element of the node last returned by 'nodeFor'.
+    private int offset;
+
+    public UnrolledLinkedList() {
+        this.front = null;
+        this.back = null;
+        this.size = 0;
+    }
+
+    @Override
+    public void add(T item) {
+        if (back == null || back.count == NODE_CAPACITY) {
+            linkAfter(back, new Node<T>());
+        }
+        back.items[back.count] = item;
+        back.count++;
+        size++;
+    }
+
+    @Override
+    public T remove() {
+        if (size == 0) {
+            throw new EmptyContainerException();
+        }
+        return removeFrom(back, back.count - 1);
+    }
+
+    @Override
+    public T get(int index) {
+        checkIndex(index, size);
+        Node<T> node = nodeFor(index);
+        return node.items[index - offset];
+    }
+
+    @Override
+    public void set(int index, T item) {
+        checkIndex(index, size);
+        Node<T> node = nodeFor(index);
+        node.items[index - offset] = item;
+    }
+
+    @Override
+    public void insert(int index, T item) {
+        checkIndex(index, size + 1);
+        if (index == size) {
+            add(item);
+            return;
+        }
+        Node<T> node = nodeFor(index);
+        int at = index - offset;
+        if (node.count == NODE_CAPACITY) {
+            if (at == 0 && (node.prev == null || node.prev.count == NODE_CAPACITY)) {
+                // Inserting at the very front of a full node: start a new node before it.
+                Node<T> fresh = new Node<>();
+                linkAfter(node.prev, fresh);
+                fresh.items[0] = item;
+                fresh.count = 1;
+                size++;
+                return;
+            }
+            if (at == 0) {
+                // The previous node has room, so the item goes at its end.
+                node = node.prev;
+                at = node.count;
+            } else {
+                // Split: move the back half into a new node after this one.
+                Node<T> half = new Node<>();
+                int moved = NODE_CAPACITY / 2;
+                System.arraycopy(node.items, NODE_CAPACITY - moved, half.items, 0, moved);
+                for (int i = NODE_CAPACITY - moved; i < NODE_CAPACITY; i++) {
+                    node.items[i] = null;
+                }
+                half.count = moved;
+                node.count -= moved;
+                linkAfter(node, half);
+                if (at > node.count) {
+                    at -= node.count;
+                    node = half;
+                }
+            }
+        }
+        System.arraycopy(node.items, at, node.items, at + 1, node.count - at);
+        node.items[at] = item;
+        node.count++;
+        size++;
+    }
+
+    @Override
+    public T delete(int index) {
+        checkIndex(index, size);
+        Node<T> node = nodeFor(index);
+        return removeFrom(node, index - offset);
+    }
+
+    /**
+     * Appends every element of 'items', in order, filling nodes directly.
+     */
+    public void addAll(Iterable<? extends T> items) {
+        if (items == this) {
+            // The iterator would keep reaching the elements being appended.
+            DynamicArrayList<T> copy = new DynamicArrayList<>(size);
+            copy.addAll(this);
+            items = copy;
+        }
+        for (T item : items) {
+            if (back == null || back.count == NODE_CAPACITY) {
+                linkAfter(back, new Node<T>());
+            }
+            back.items[back.count] = item;
+            back.count++;
+            size++;
+        }
+    }
+
+    /**
+     * Moves every element of 'other' to the end of this list in O(1) time by linking
+     * its nodes on, leaving 'other' empty.
+     */
+    public void concat(UnrolledLinkedList<T> other) {
+        if (other == this) {
+            throw new IllegalArgumentException("cannot concatenate a list onto itself");
+        }
+        if (other.front == null) {
+            return;
+        }
+        if (back == null) {
+            front = other.front;
+        } else {
+            back.next = other.front;
+            other.front.prev = back;
+        }
+        back = other.back;
+        size += other.size;
+        other.front = null;
+        other.back = null;
+        other.size = 0;
+    }
+
+    /**
+     * Deletes the elements at indices 'from' (inclusive) through 'to' (exclusive).
+     * Nodes that fall entirely inside the range are unlinked without being visited
+     * element by element.
+     */
+    public void removeRange(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("range " + from + " to " + to + ", size " + size);
+        }
+        int remaining = to - from;
+        if (remaining == 0) {
+            return;
+        }
+        Node<T> node = nodeFor(from);
+        int at = from - offset;
+        while (remaining > 0) {
+            Node<T> next = node.next;
+            int removed = Math.min(remaining, node.count - at);
+            if (at == 0 && removed == node.count) {
+                unlink(node);
+            } else {
+                System.arraycopy(node.items, at + removed, node.items, at, node.count - at - removed);
+                for (int i = node.count - removed; i < node.count; i++) {
+                    node.items[i] = null;
+                }
+                node.count -= removed;
+            }
+            size -= removed;
+            remaining -= removed;
+            node = next;
+            at = 0;
+        }
+    }
+
+    @Override
+    public int indexOf(T item) {
+        int index = 0;
+        for (Node<T> node = front; node != null; node = node.next) {
+            for (int i = 0; i < node.count; i++) {
+                if (item == null ? node.items[i] == null : item.equals(node.items[i])) {
+                    return index + i;
+                }
+            }
+            index += node.count;
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(T other) {
+        return indexOf(other) != -1;
+    }
+
+    /**
+     * Estimated bytes retained by this list: the list object, every node with its
+     * array, and each element as measured by MemoryLayout.boxed.
+     */
+    public long estimateBytes() {
+        long bytes = MemoryLayout.object(2, 8);
+        for (Node<T> node = front; node != null; node = node.next) {
+            bytes += MemoryLayout.object(3, 4) + MemoryLayout.referenceArray(NODE_CAPACITY);
+            for (int i = 0; i < node.count; i++) {
+                bytes += MemoryLayout.boxed(node.items[i]);
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new UnrolledIterator<>(front);
+    }
+
+    // Returns the node holding 'index' and sets 'offset', starting from whichever
+    // end of the list is closer.
+    private Node<T> nodeFor(int index) {
+        if (index < size / 2) {
+            Node<T> node = front;
+            int start = 0;
+            while (start + node.count <= index) {
+                start += node.count;
+                node = node.next;
+            }
+            offset = start;
+            return node;
+        } else {
+            Node<T> node = back;
+            int start = size - back.count;
+            while (start > index) {
+                node = node.prev;
+                start -= node.count;
+            }
+            offset = start;
+            return node;
+        }
+    }
+
+    private T removeFrom(Node<T> node, int at) {
+        T item = node.items[at];
+        System.arraycopy(node.items, at + 1, node.items, at, node.count - at - 1);
+        node.count--;
+        node.items[node.count] = null;
+        size--;
+        if (node.count == 0) {
+            unlink(node);
+        }
+        return item;
+    }
+
+    // Links 'node' in after 'before', or at the front if 'before' is null.
+    private void linkAfter(Node<T> before, Node<T> node) {
+        Node<T> after = before == null ? front : before.next;
+        node.prev = before;
+        node.next = after;
+        if (before == null) {
+            front = node;
+        } else {
+            before.next = node;
+        }
+        if (after == null) {
+            back = node;
+        } else {
+            after.prev = node;
+        }
+    }
+
+    private void unlink(Node<T> node) {
+        if (node.prev == null) {
+            front = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            back = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + bound);
+        }
+    }
+
+    private static class Node<E> {
+        private final E[] items;
+        private int count;
+        private Node<E> prev;
+        private Node<E> next;
+
+        @SuppressWarnings("unchecked")
+        Node() {
+            this.items = (E[]) new Object[NODE_CAPACITY];
+            this.count = 0;
+        }
+    }
+
+    private static class UnrolledIterator<T> implements Iterator<T> {
+        private Node<T> node;
+        private int at;
+
+        UnrolledIterator(Node<T> front) {
+            this.node = front;
+            this.at = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return node != null;
+        }
+
+        @Override
+        public T next() {
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            T item = node.items[at];
+            at++;
+            if (at == node.count) {
+                node = node.next;
+                at = 0;
+            }
+            return item;
+        }
+    }
+}